@@ -0,0 +1,37 @@
+package com.jeremy.courses;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+@RestControllerAdvice
+public class ApiExceptionHandler {
+
+    // Password hashing pool is full (login storms); clients should back off briefly
+    @ExceptionHandler(HashingCapacityExceededException.class)
+    public ResponseEntity<?> handleHashingCapacityExceeded(HashingCapacityExceededException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", e.getMessage()));
+    }
+
+    // Completion write-behind buffer is full or stopped; the completion was not accepted, so the client resends it
+    @ExceptionHandler(CompletionBufferFullException.class)
+    public ResponseEntity<?> handleCompletionBufferFull(CompletionBufferFullException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", e.getMessage()));
+    }
+
+    // Two edits of the same row raced; the loser gets a conflict instead of silently overwriting the winner
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<?> handleOptimisticLockingFailure(ObjectOptimisticLockingFailureException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", "This item was changed by someone else; reload it and try again"));
+    }
+}
@@ -1,74 +1,92 @@
-package com.jeremy.courses;
-
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RestController;
-
-import java.time.LocalDateTime;
-import java.util.Map;
-import java.util.UUID;
-
-@RestController
-public class AuthController {
-
-    private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
-
-    public AuthController(UserRepository userRepository, PasswordEncoder passwordEncoder) {
-        this.userRepository = userRepository;
-        this.passwordEncoder = passwordEncoder;
-    }
-
-    @PostMapping("/auth/login")
-    public ResponseEntity<?> login(@RequestBody Map<String, String> body) {
-        String email = body.get("email");
-        String password = body.get("password");
-
-        if (email == null || email.isEmpty() || password == null || password.isEmpty()) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Email and password are required"));
-        }
-
-        User user = userRepository.findByEmail(email);
-        if (user == null || !passwordEncoder.matches(password, user.getPassword())) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Invalid email or password"));
-        }
-
-        // Generate new auth token and store it on the user
-        String token = UUID.randomUUID().toString();
-        user.setAuthToken(token);
-        userRepository.save(user);
-
-        // Return token and user info (without password)
-        return ResponseEntity.ok(Map.of(
-                "token", token,
-                "user", user
-        ));
-    }
-
-    @PostMapping("/auth/reset-password")
-    public ResponseEntity<?> resetPasswordWithToken(@RequestBody Map<String, String> body) {
-        String token = body.get("token");
-        String newPassword = body.get("newPassword");
-
-        if (token == null || token.isEmpty() || newPassword == null || newPassword.isEmpty()) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Token and new password are required"));
-        }
-
-        User user = userRepository.findByPasswordResetToken(token);
-        if (user == null || user.getPasswordResetTokenExpiry() == null || user.getPasswordResetTokenExpiry().isBefore(LocalDateTime.now())) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", "Invalid or expired reset token"));
-        }
-
-        user.setPassword(passwordEncoder.encode(newPassword));
-        user.setPasswordResetToken(null);
-        user.setPasswordResetTokenExpiry(null);
-        // Invalidate existing auth token(s) so the user must log in again
-        user.setAuthToken(null);
-        userRepository.save(user);
-
-        return ResponseEntity.ok(Map.of("message", "Password has been reset successfully"));
-    }
-}
+package com.jeremy.courses;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@RestController
+public class AuthController {
+
+    private final UserRepository userRepository;
+    private final PasswordHashingService passwordHashingService;
+    private final AuthTokenService authTokenService;
+
+    public AuthController(UserRepository userRepository, PasswordHashingService passwordHashingService, AuthTokenService authTokenService) {
+        this.userRepository = userRepository;
+        this.passwordHashingService = passwordHashingService;
+        this.authTokenService = authTokenService;
+    }
+
+    @PostMapping("/auth/login")
+    public ResponseEntity<?> login(@RequestBody Map<String, String> body,
+                                   @RequestHeader(value = "User-Agent", required = false) String userAgent) {
+        String email = body.get("email");
+        String password = body.get("password");
+
+        if (email == null || email.isEmpty() || password == null || password.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Email and password are required"));
+        }
+
+        User user = userRepository.findByEmail(email);
+        if (user == null || !passwordHashingService.matches(password, user.getPassword())) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Invalid email or password"));
+        }
+
+        // Transparently move old hashes to the currently configured BCrypt cost, off the request path:
+        // a failed upgrade must never fail a login whose password was correct
+        if (passwordHashingService.needsUpgrade(user.getPassword())) {
+            String oldHash = user.getPassword();
+            passwordHashingService.encodeInBackground(password,
+                    newHash -> userRepository.upgradePassword(user.getId(), oldHash, newHash));
+        }
+
+        // Generate new auth token: a new session for this device, or a signed token, depending on auth.token-mode
+        String token = authTokenService.issueToken(user, userAgent);
+
+        // Return token and user info (without password)
+        return ResponseEntity.ok(Map.of(
+                "token", token,
+                "user", user
+        ));
+    }
+
+    @PostMapping("/auth/reset-password")
+    public ResponseEntity<?> resetPasswordWithToken(@RequestBody Map<String, String> body) {
+        String token = body.get("token");
+        String newPassword = body.get("newPassword");
+
+        if (token == null || token.isEmpty() || newPassword == null || newPassword.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Token and new password are required"));
+        }
+
+        User user = userRepository.findByPasswordResetToken(token);
+        if (user == null || user.getPasswordResetTokenExpiry() == null || user.getPasswordResetTokenExpiry().isBefore(LocalDateTime.now())) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", "Invalid or expired reset token"));
+        }
+
+        user.setPassword(passwordHashingService.encode(newPassword));
+        user.setPasswordResetToken(null);
+        user.setPasswordResetTokenExpiry(null);
+        userRepository.save(user);
+        // Invalidate existing auth token(s) so the user must log in again
+        authTokenService.revokeAllTokens(user.getId());
+
+        return ResponseEntity.ok(Map.of("message", "Password has been reset successfully"));
+    }
+
+    @PostMapping("/auth/logout")
+    public ResponseEntity<?> logout(@RequestHeader(value = "Authorization", required = false) String authHeader) {
+        if (authHeader == null || !authHeader.startsWith("Bearer ") || authHeader.length() == 7) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
+        }
+
+        authTokenService.revokeToken(authHeader.substring(7));
+        return ResponseEntity.ok(Map.of("message", "Logged out"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.jeremy.courses;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * One logged-in device. Only the SHA-256 hash of the bearer token is stored,
+ * under a unique index, so lookups stay a single index probe as the table grows.
+ */
+@Entity
+@Table(name = "auth_sessions", indexes = {
+    @Index(name = "uk_auth_sessions_token_hash", columnList = "token_hash", unique = true),
+    @Index(name = "idx_auth_sessions_user_id", columnList = "user_id"),
+    @Index(name = "idx_auth_sessions_expires_at", columnList = "expires_at")
+})
+public class AuthSession {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(name = "token_hash", nullable = false, length = 64)
+    private String tokenHash;
+
+    // Free-form device label (User-Agent at login), only for display
+    @Column(name = "device")
+    private String device;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "last_used_at", nullable = false)
+    private Instant lastUsedAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    public AuthSession() {
+    }
+
+    public AuthSession(User user, String tokenHash, String device, Instant createdAt, Instant expiresAt) {
+        this.user = user;
+        this.tokenHash = tokenHash;
+        this.device = device;
+        this.createdAt = createdAt;
+        this.lastUsedAt = createdAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public String getDevice() {
+        return device;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -0,0 +1,38 @@
+package com.jeremy.courses;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+
+public interface AuthSessionRepository extends JpaRepository<AuthSession, Long> {
+
+    // Fetch the user in the same round trip; the filter needs id, email and role
+    @Query("select s from AuthSession s join fetch s.user where s.tokenHash = :tokenHash")
+    Optional<AuthSession> findWithUserByTokenHash(String tokenHash);
+
+    @Transactional
+    @Modifying
+    @Query("update AuthSession s set s.lastUsedAt = :lastUsedAt where s.id = :id")
+    int touch(Long id, Instant lastUsedAt);
+
+    @Transactional
+    @Modifying
+    @Query("delete from AuthSession s where s.tokenHash = :tokenHash")
+    int deleteByTokenHash(String tokenHash);
+
+    @Transactional
+    @Modifying
+    @Query("delete from AuthSession s where s.user.id = :userId")
+    int deleteByUserId(Long userId);
+
+    // Batched so the sweeper never holds long locks on a big backlog
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM auth_sessions WHERE id IN "
+            + "(SELECT id FROM auth_sessions WHERE expires_at < :now LIMIT :batchSize)", nativeQuery = true)
+    int deleteExpiredBatch(Instant now, int batchSize);
+}
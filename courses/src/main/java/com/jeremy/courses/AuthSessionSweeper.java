@@ -0,0 +1,52 @@
+package com.jeremy.courses;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * Periodically removes expired auth sessions and clears expired password reset tokens,
+ * a batch at a time.
+ */
+@Component
+public class AuthSessionSweeper {
+
+    private final AuthSessionRepository authSessionRepository;
+    private final UserRepository userRepository;
+    private final int batchSize;
+
+    public AuthSessionSweeper(AuthSessionRepository authSessionRepository,
+                              UserRepository userRepository,
+                              @Value("${auth.session-sweep.batch-size:1000}") int batchSize) {
+        this.authSessionRepository = authSessionRepository;
+        this.userRepository = userRepository;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${auth.session-sweep.interval-ms:600000}",
+            initialDelayString = "${auth.session-sweep.interval-ms:600000}")
+    public void sweep() {
+        Instant now = Instant.now();
+        long sessions = 0;
+        int deleted;
+        do {
+            deleted = authSessionRepository.deleteExpiredBatch(now, batchSize);
+            sessions += deleted;
+        } while (deleted == batchSize);
+
+        LocalDateTime localNow = LocalDateTime.now();
+        long resetTokens = 0;
+        int cleared;
+        do {
+            cleared = userRepository.clearExpiredPasswordResetTokens(localNow, batchSize);
+            resetTokens += cleared;
+        } while (cleared == batchSize);
+
+        if (sessions > 0 || resetTokens > 0) {
+            System.out.println("Swept " + sessions + " expired sessions and " + resetTokens + " expired reset tokens");
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.jeremy.courses;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, TTL-based cache of bearer token -> principal so the auth filter
+ * doesn't hit the database on every request.
+ *
+ * Entries must be invalidated whenever a token is revoked or a user's role changes
+ * (logout, password reset, role upgrade). Callers take generation() before loading the session
+ * and pass it to put(): if any invalidation happened in between, the loaded principal may already
+ * be revoked or stale and is not cached. Entries never outlive the session they came from.
+ */
+@Component
+public class AuthTokenCache {
+
+    private record Entry(AuthenticatedUser principal, long expiresAtMillis) {
+    }
+
+    private final int maxSize;
+    private final long ttlMillis;
+
+    // Access-ordered so the eldest entry is always the least recently used one
+    private final LinkedHashMap<String, Entry> entries;
+
+    // Bumped by every invalidation, under the cache lock
+    private long generation;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public AuthTokenCache(@Value("${auth.token-cache.max-size:10000}") int maxSize,
+                          @Value("${auth.token-cache.ttl-seconds:300}") long ttlSeconds,
+                          MeterRegistry meterRegistry) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > AuthTokenCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        this.hits = Counter.builder("auth.token.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("auth.token.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder("auth.token.cache.evictions").register(meterRegistry);
+        Gauge.builder("auth.token.cache.size", this, AuthTokenCache::size).register(meterRegistry);
+    }
+
+    public synchronized AuthenticatedUser get(String token) {
+        Entry entry = entries.get(token);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.expiresAtMillis() <= System.currentTimeMillis()) {
+            entries.remove(token);
+            evictions.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.principal();
+    }
+
+    public synchronized long generation() {
+        return generation;
+    }
+
+    // Caches the principal unless an invalidation ran since loadedAt was taken from generation()
+    public synchronized AuthenticatedUser put(String token, User user, Instant sessionExpiresAt, long loadedAt) {
+        AuthenticatedUser principal = AuthenticatedUser.of(user);
+        if (maxSize > 0 && loadedAt == generation) {
+            long expiresAt = Math.min(System.currentTimeMillis() + ttlMillis, sessionExpiresAt.toEpochMilli());
+            entries.put(token, new Entry(principal, expiresAt));
+        }
+        return principal;
+    }
+
+    public synchronized void invalidateToken(String token) {
+        generation++;
+        if (token != null) {
+            entries.remove(token);
+        }
+    }
+
+    // Drop every cached token belonging to this user
+    public synchronized void invalidateUser(Long userId) {
+        generation++;
+        if (userId == null) {
+            return;
+        }
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (userId.equals(it.next().principal().id())) {
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
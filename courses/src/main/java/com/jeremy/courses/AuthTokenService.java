@@ -0,0 +1,161 @@
+package com.jeremy.courses;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Issues, authenticates and revokes bearer tokens.
+ *
+ * Two modes, chosen by auth.token-mode:
+ * - opaque (default): random token backed by an auth_sessions row (one per device), looked up
+ *   by SHA-256 hash through AuthTokenCache
+ * - signed: HMAC-signed self-contained tokens verified in memory, revoked via TokenDenylist
+ */
+@Service
+public class AuthTokenService {
+
+    // Don't write last_used_at more often than this per session
+    private static final Duration TOUCH_INTERVAL = Duration.ofMinutes(5);
+
+    private final AuthSessionRepository authSessionRepository;
+    private final AuthTokenCache authTokenCache;
+    private final TokenDenylist tokenDenylist;
+    private final SignedTokenCodec signedTokenCodec;
+    private final Duration accessTokenTtl;
+    private final Duration sessionTtl;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    public AuthTokenService(AuthSessionRepository authSessionRepository,
+                            AuthTokenCache authTokenCache,
+                            ObjectProvider<TokenDenylist> tokenDenylist,
+                            @Value("${auth.token-mode:opaque}") String tokenMode,
+                            @Value("${auth.signing-secret:}") String signingSecret,
+                            @Value("${auth.access-token-ttl-minutes:720}") long accessTokenTtlMinutes,
+                            @Value("${auth.session-ttl-days:30}") long sessionTtlDays) {
+        this.authSessionRepository = authSessionRepository;
+        this.authTokenCache = authTokenCache;
+        this.accessTokenTtl = Duration.ofMinutes(accessTokenTtlMinutes);
+        this.sessionTtl = Duration.ofDays(sessionTtlDays);
+        if ("signed".equalsIgnoreCase(tokenMode)) {
+            this.signedTokenCodec = new SignedTokenCodec(signingSecret);
+            this.tokenDenylist = tokenDenylist.getObject();
+        } else {
+            this.signedTokenCodec = null;
+            this.tokenDenylist = null;
+        }
+    }
+
+    private boolean isSigned() {
+        return signedTokenCodec != null;
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    public String issueToken(User user, String device) {
+        if (isSigned()) {
+            long now = System.currentTimeMillis();
+            return signedTokenCodec.encode(new SignedTokenCodec.Claims(
+                    UUID.randomUUID().toString(),
+                    user.getId(),
+                    user.getRole(),
+                    now,
+                    now + accessTokenTtl.toMillis(),
+                    user.getEmail()
+            ));
+        }
+
+        byte[] random = new byte[32];
+        secureRandom.nextBytes(random);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+
+        if (device != null && device.length() > 255) {
+            device = device.substring(0, 255);
+        }
+        Instant now = Instant.now();
+        authSessionRepository.save(new AuthSession(user, hash(token), device, now, now.plus(sessionTtl)));
+        return token;
+    }
+
+    /**
+     * Resolves a bearer token to its principal, or null if it is unknown, expired or revoked.
+     */
+    public AuthenticatedUser authenticate(String token) {
+        if (isSigned()) {
+            SignedTokenCodec.Claims claims = signedTokenCodec.decode(token, System.currentTimeMillis());
+            if (claims == null || tokenDenylist.isRevoked(claims)) {
+                return null;
+            }
+            return new AuthenticatedUser(claims.userId(), claims.email(), claims.role());
+        }
+
+        AuthenticatedUser principal = authTokenCache.get(token);
+        if (principal != null) {
+            return principal;
+        }
+
+        // Taken before the lookup, so a logout or role change racing it keeps the result out of the cache
+        long generation = authTokenCache.generation();
+        AuthSession session = authSessionRepository.findWithUserByTokenHash(hash(token)).orElse(null);
+        Instant now = Instant.now();
+        if (session == null || !session.getExpiresAt().isAfter(now)) {
+            return null;
+        }
+        // Cache hits skip this, so last_used_at is only as precise as the cache TTL
+        if (session.getLastUsedAt().plus(TOUCH_INTERVAL).isBefore(now)) {
+            authSessionRepository.touch(session.getId(), now);
+        }
+        return authTokenCache.put(token, session.getUser(), session.getExpiresAt(), generation);
+    }
+
+    // Logout: invalidate just the presented token
+    public void revokeToken(String token) {
+        if (isSigned()) {
+            SignedTokenCodec.Claims claims = signedTokenCodec.decode(token, System.currentTimeMillis());
+            if (claims != null) {
+                tokenDenylist.revokeToken(claims.tokenId(), Instant.ofEpochMilli(claims.expiresAtMillis()));
+            }
+            return;
+        }
+
+        authSessionRepository.deleteByTokenHash(hash(token));
+        authTokenCache.invalidateToken(token);
+    }
+
+    // Password reset: every token issued to this user so far stops working
+    public void revokeAllTokens(Long userId) {
+        if (isSigned()) {
+            Instant now = Instant.now();
+            tokenDenylist.revokeUser(userId, now, now.plus(accessTokenTtl));
+            return;
+        }
+
+        authSessionRepository.deleteByUserId(userId);
+        authTokenCache.invalidateUser(userId);
+    }
+
+    /**
+     * Called when a user's role changes. Opaque sessions pick the change up immediately;
+     * signed tokens carry the role, so the user gets it on their next login.
+     */
+    public void userChanged(Long userId) {
+        authTokenCache.invalidateUser(userId);
+    }
+}
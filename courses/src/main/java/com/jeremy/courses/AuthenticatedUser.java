@@ -0,0 +1,25 @@
+package com.jeremy.courses;
+
+import org.springframework.security.core.AuthenticatedPrincipal;
+
+/**
+ * Principal stored in the SecurityContext by the token filter.
+ * Carries just enough of the user for access checks so controllers
+ * don't have to look the user up again by email.
+ */
+public record AuthenticatedUser(Long id, String email, String role) implements AuthenticatedPrincipal {
+
+    public static AuthenticatedUser of(User user) {
+        return new AuthenticatedUser(user.getId(), user.getEmail(), user.getRole());
+    }
+
+    // Keeps Authentication.getName() returning the email, as before
+    @Override
+    public String getName() {
+        return email;
+    }
+
+    public boolean isAdmin() {
+        return "ADMIN".equals(role);
+    }
+}
@@ -0,0 +1,193 @@
+package com.jeremy.courses;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Write-behind buffer for lesson completions. Requests are acknowledged once the completion is queued;
+ * a background flusher writes the queue in micro-batches through ProgressCounters.completeAll
+ * (INSERT ... ON CONFLICT DO NOTHING, counters bumped in the same statement).
+ *
+ * Repeated clicks on the same lesson collapse into one pending entry. When the database is unavailable a
+ * failed batch is put back and retried on the next flush. Any other failure is narrowed down by splitting
+ * the batch in halves, so the rest still gets written and only completions that fail on their own are
+ * dropped (logged and counted in progress.completions.dropped). When the buffer is full or stopped,
+ * submit throws CompletionBufferFullException (503 + Retry-After) instead of accepting the completion.
+ *
+ * A 202 is not a durable write: the queue is drained on shutdown, but completions still queued when the
+ * process dies are lost.
+ */
+@Component
+public class CompletionBuffer {
+
+    private record Key(Long userId, Long lessonId) {
+    }
+
+    private final ProgressCounters progressCounters;
+    private final int flushSize;
+    private final int maxPending;
+
+    // Insertion-ordered so batches go out oldest first
+    private final LinkedHashMap<Key, ProgressCounters.PendingCompletion> pending = new LinkedHashMap<>();
+    // Serializes flushes between the scheduler, size-triggered flushes and shutdown
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "completion-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Timer flushTimer;
+    private final Counter written;
+    private final Counter failedFlushes;
+    private final Counter dropped;
+
+    public CompletionBuffer(ProgressCounters progressCounters,
+                            @Value("${courses.progress.completions.flush-interval-ms:200}") long flushIntervalMs,
+                            @Value("${courses.progress.completions.flush-size:500}") int flushSize,
+                            @Value("${courses.progress.completions.max-pending:100000}") int maxPending,
+                            MeterRegistry meterRegistry) {
+        this.progressCounters = progressCounters;
+        this.flushSize = flushSize;
+        this.maxPending = maxPending;
+
+        Gauge.builder("progress.completions.pending", this, CompletionBuffer::size).register(meterRegistry);
+        this.flushTimer = Timer.builder("progress.completions.flush").register(meterRegistry);
+        this.written = Counter.builder("progress.completions.written").register(meterRegistry);
+        this.failedFlushes = Counter.builder("progress.completions.flush.failures").register(meterRegistry);
+        this.dropped = Counter.builder("progress.completions.dropped").register(meterRegistry);
+
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Queues the completion and returns the time recorded for it
+    public LocalDateTime submit(Long userId, Long lessonId, Long courseId) {
+        LocalDateTime now = LocalDateTime.now();
+        ProgressCounters.PendingCompletion completion = new ProgressCounters.PendingCompletion(userId, lessonId, courseId, now);
+        int size;
+        synchronized (pending) {
+            if (pending.size() >= maxPending || flusher.isShutdown()) {
+                // Flusher is behind (or the database is down) or already stopped: don't grow without bound
+                throw new CompletionBufferFullException();
+            }
+            pending.putIfAbsent(new Key(userId, lessonId), completion);
+            size = pending.size();
+        }
+        if (size >= flushSize && flushQueued.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushQueued.set(false);
+                flush();
+            });
+        }
+        return now;
+    }
+
+    public int size() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    // Writes everything queued so far, one batch of flush-size at a time. Never throws: it also runs on the
+    // scheduler, where an exception would cancel every later flush.
+    public void flush() {
+        synchronized (flushLock) {
+            List<ProgressCounters.PendingCompletion> batch;
+            while (!(batch = take()).isEmpty()) {
+                if (!write(batch)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // False when the database is unavailable; what wasn't written is then back in the queue for the next flush
+    private boolean write(List<ProgressCounters.PendingCompletion> batch) {
+        try {
+            written.increment(flushTimer.record(() -> progressCounters.completeAll(batch)));
+            return true;
+        } catch (RuntimeException e) {
+            failedFlushes.increment();
+            if (unavailable(e)) {
+                requeue(batch);
+                System.err.println("Flushing lesson completions failed, will retry: " + e.getMessage());
+                return false;
+            }
+            if (batch.size() == 1) {
+                dropped.increment();
+                System.err.println("Dropping lesson completion " + batch.get(0) + ": " + e.getMessage());
+                return true;
+            }
+            int half = batch.size() / 2;
+            if (!write(batch.subList(0, half))) {
+                requeue(batch.subList(half, batch.size()));
+                return false;
+            }
+            return write(batch.subList(half, batch.size()));
+        }
+    }
+
+    // Failures that say nothing about the completions themselves (connection lost, lock timeout, deadlock)
+    private static boolean unavailable(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    private List<ProgressCounters.PendingCompletion> take() {
+        synchronized (pending) {
+            List<ProgressCounters.PendingCompletion> batch = new ArrayList<>(Math.min(flushSize, pending.size()));
+            Iterator<ProgressCounters.PendingCompletion> it = pending.values().iterator();
+            while (it.hasNext() && batch.size() < flushSize) {
+                batch.add(it.next());
+                it.remove();
+            }
+            return batch;
+        }
+    }
+
+    private void requeue(List<ProgressCounters.PendingCompletion> batch) {
+        synchronized (pending) {
+            for (ProgressCounters.PendingCompletion completion : batch) {
+                pending.putIfAbsent(new Key(completion.userId(), completion.lessonId()), completion);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        int lost = size();
+        if (lost > 0) {
+            System.err.println("Shutting down with " + lost + " lesson completions that could not be saved");
+        }
+    }
+}
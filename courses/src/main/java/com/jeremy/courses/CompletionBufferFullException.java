@@ -0,0 +1,12 @@
+package com.jeremy.courses;
+
+/**
+ * Thrown when the completion buffer can't take more (the flusher is behind or stopped); surfaces as
+ * 503 with Retry-After, so the client resends the completion instead of getting a 202 for it.
+ */
+public class CompletionBufferFullException extends RuntimeException {
+
+    public CompletionBufferFullException() {
+        super("Too many lesson completions waiting to be saved, please retry shortly");
+    }
+}
@@ -0,0 +1,120 @@
+package com.jeremy.courses;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Cheap validators (ETag + Last-Modified) for conditional GETs, computed from the version and
+ * updated_at columns alone so a 304 never loads or serializes the response body.
+ *
+ * The ETag also covers the caller-dependent parts of a response (visibility, representation),
+ * passed in as variant strings.
+ */
+@Component
+public class ContentVersions {
+
+    public record Stamp(String etag, Instant lastModified) {
+
+        public long lastModifiedMillis() {
+            return lastModified != null ? lastModified.toEpochMilli() : -1;
+        }
+
+        // Same version, different representation of it
+        public Stamp variant(String suffix) {
+            return new Stamp(etag.substring(0, etag.length() - 1) + "-" + suffix + "\"", lastModified);
+        }
+    }
+
+    public record LessonStamp(Long courseId, Stamp stamp) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ContentVersions(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Same rows CourseRepository.findVisiblePage returns for this caller and cursor (plus the look-ahead
+    // row), so edits elsewhere in the catalog don't invalidate the page. The id sum catches a course
+    // leaving the page (deleted, or hidden by an allowlist change) and the next one sliding in.
+    private static final String CATALOG_PAGE_SQL = """
+            SELECT count(*), coalesce(sum(p.id), 0), coalesce(sum(p.version), 0), max(p.updated_at) FROM (
+                SELECT c.id, c.version, c.updated_at FROM courses c
+                WHERE c.deleted = false AND c.id > ?
+                  AND (c.restricted_to_allow_list = false OR ? OR c.author_id = ?
+                       OR EXISTS (SELECT 1 FROM course_allowed_emails a WHERE a.course_id = c.id AND a.email = ?))
+                ORDER BY c.id
+                LIMIT ?
+            ) p
+            """;
+
+    public Stamp catalog(long after, Long userId, String email, boolean isAdmin, int pageSize) {
+        return jdbcTemplate.queryForObject(CATALOG_PAGE_SQL,
+                (rs, i) -> stamp(rs.getTimestamp(4), "catalog", rs.getLong(1), rs.getLong(2), rs.getLong(3),
+                        after, userId, email, isAdmin, pageSize),
+                after, isAdmin, userId, email, pageSize + 1);
+    }
+
+    // Null when the course doesn't exist. Deleting a lesson touches its course's updated_at (see ProgressCounters.deleteLesson).
+    public Stamp lessons(Long courseId, Object... variant) {
+        List<Stamp> stamps = jdbcTemplate.query(
+                "SELECT count(l.id), coalesce(sum(l.version), 0), greatest(max(l.updated_at), c.updated_at) "
+                        + "FROM courses c LEFT JOIN lessons l ON l.course_id = c.id "
+                        + "WHERE c.id = ? GROUP BY c.id",
+                (rs, i) -> stamp(rs.getTimestamp(3), "lessons", courseId, rs.getLong(1), rs.getLong(2), Arrays.asList(variant)),
+                courseId);
+        return stamps.isEmpty() ? null : stamps.get(0);
+    }
+
+    // Null when the lesson doesn't exist. The lesson is served with its course, so both versions count.
+    public LessonStamp lesson(Long lessonId) {
+        List<LessonStamp> stamps = jdbcTemplate.query(
+                "SELECT l.course_id, l.version, c.version, greatest(l.updated_at, c.updated_at) "
+                        + "FROM lessons l JOIN courses c ON c.id = l.course_id WHERE l.id = ?",
+                (rs, i) -> {
+                    Timestamp lastModified = rs.getTimestamp(4);
+                    return new LessonStamp(rs.getLong(1), lessonStamp(lessonId, rs.getLong(2), rs.getLong(3),
+                            lastModified != null ? lastModified.toInstant() : null));
+                },
+                lessonId);
+        return stamps.isEmpty() ? null : stamps.get(0);
+    }
+
+    // Also checked against If-Match on lesson updates, so it must match what GET /lessons/{id} sent
+    public static Stamp lessonStamp(Lesson lesson) {
+        Course course = lesson.getCourse();
+        Instant lastModified = lesson.getUpdatedAt();
+        if (lastModified != null && course.getUpdatedAt() != null && course.getUpdatedAt().isAfter(lastModified)) {
+            lastModified = course.getUpdatedAt();
+        }
+        return lessonStamp(lesson.getId(), lesson.getVersion(), course.getVersion(), lastModified);
+    }
+
+    private static Stamp lessonStamp(Long lessonId, long lessonVersion, long courseVersion, Instant lastModified) {
+        return new Stamp("\"lesson-" + lessonId + "-" + lessonVersion + "-" + courseVersion + "\"", lastModified);
+    }
+
+    private static Stamp stamp(Timestamp lastModified, Object... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Object part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            digest.update(String.valueOf(lastModified).getBytes(StandardCharsets.UTF_8));
+            return new Stamp("\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"",
+                    lastModified != null ? lastModified.toInstant() : null);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+}
@@ -1,15 +1,24 @@
 package com.jeremy.courses;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
+import org.hibernate.annotations.SQLRestriction;
+import org.hibernate.annotations.UpdateTimestamp;
+import java.time.Instant;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "courses")
+@SQLRestriction("deleted = false")
+@Table(name = "courses", indexes = {
+        @Index(name = "idx_courses_author_id", columnList = "author_id")
+})
 public class Course {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "courses_seq")
+    @SequenceGenerator(name = "courses_seq", sequenceName = "courses_seq", allocationSize = 50)
     private Long id;
 
     private String title;
@@ -29,8 +38,34 @@ public class Course {
     @Column(name = "restricted_to_allow_list", nullable = false)
     private boolean restrictedToAllowList = false;
 
-    @ElementCollection(fetch = FetchType.EAGER)
-    @CollectionTable(name = "course_allowed_emails", joinColumns = @JoinColumn(name = "course_id"))
+    @JsonIgnore
+    @Column(name = "deleted", nullable = false, columnDefinition = "boolean not null default false")
+    private boolean deleted = false;
+
+    // Optimistic lock and ETag source: bumped on every update (set-based SQL updates bump it explicitly)
+    @JsonIgnore
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint not null default 0")
+    private Long version;
+
+    @JsonIgnore
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false, columnDefinition = "timestamp(6) with time zone not null default now()")
+    private Instant updatedAt;
+
+    // Maintained in SQL by ProgressCounters (and repaired by its reconciliation), never written from the entity
+    @JsonIgnore
+    @Column(name = "lesson_count", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "integer not null default 0")
+    private int lessonCount;
+
+    // Can hold tens of thousands of emails: never loaded with the course or serialized. Accepted on
+    // POST /courses, which writes it through CourseAllowlistImportService. Membership checks go through
+    // CourseAllowlistService; access endpoints page through it.
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    @ElementCollection(fetch = FetchType.LAZY)
+    @CollectionTable(name = "course_allowed_emails", joinColumns = @JoinColumn(name = "course_id"),
+            indexes = @Index(name = "idx_course_allowed_emails_course_email", columnList = "course_id, email", unique = true))
     @Column(name = "email", nullable = false)
     private Set<String> allowedEmails = new HashSet<>();
 
@@ -91,6 +126,7 @@ public class Course {
         this.allowedEmails = (allowedEmails != null) ? allowedEmails : new HashSet<>();
     }
 
+    // In-memory check against a loaded allowlist; request paths use CourseAllowlistService instead
     public boolean isEmailAllowed(String email) {
         if (!restrictedToAllowList) {
             // If not restricted, treat everyone as allowed via this helper
@@ -99,4 +135,16 @@ public class Course {
         if (email == null) return false;
         return allowedEmails != null && allowedEmails.contains(email.toLowerCase());
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public int getLessonCount() {
+        return lessonCount;
+    }
 }
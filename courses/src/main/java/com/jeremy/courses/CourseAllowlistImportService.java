@@ -0,0 +1,178 @@
+package com.jeremy.courses;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Replaces a course allowlist by diffing instead of rewriting it.
+ *
+ * Uploads are parsed and normalized first, outside any transaction, into a temp file, so a slow
+ * client never holds a transaction open and the upload never has to fit in memory. One short
+ * transaction then streams the file in JDBC batches into a transaction-scoped temp table, deletes
+ * only the rows missing from it and inserts only the new ones. Changing one email in a 50k list
+ * touches two rows.
+ */
+@Service
+public class CourseAllowlistImportService {
+
+    public record ImportResult(long received, long rejected, int added, int removed, long total) {
+    }
+
+    private record Diff(int added, int removed, long total) {
+    }
+
+    // Same limit as course_allowed_emails.email (varchar(255))
+    private static final int MAX_EMAIL_LENGTH = 255;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    public CourseAllowlistImportService(JdbcTemplate jdbcTemplate,
+                                        PlatformTransactionManager transactionManager,
+                                        @Value("${courses.allowlist.import.batch-size:1000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    // CSV or newline-delimited text; every comma/semicolon separated value that looks like an email counts
+    public ImportResult replaceFrom(Long courseId, Reader body) {
+        Path spool = null;
+        try {
+            spool = Files.createTempFile("allowlist-import-", ".txt");
+            long received = 0;
+            long rejected = 0;
+            try (BufferedReader reader = new BufferedReader(body);
+                 BufferedWriter out = Files.newBufferedWriter(spool, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    for (String cell : line.split("[,;]")) {
+                        // Blank cells are just formatting, anything else (headers, garbage) is reported
+                        if (unquote(cell).isEmpty()) {
+                            continue;
+                        }
+                        String email = normalize(cell);
+                        if (email == null) {
+                            rejected++;
+                            continue;
+                        }
+                        received++;
+                        out.write(email);
+                        out.newLine();
+                    }
+                }
+            }
+
+            try (BufferedReader emails = Files.newBufferedReader(spool, StandardCharsets.UTF_8)) {
+                Diff diff = transactionTemplate.execute(status -> apply(courseId, null, emails.lines().iterator()));
+                return new ImportResult(received, rejected, diff.added(), diff.removed(), diff.total());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (spool != null) {
+                try {
+                    Files.deleteIfExists(spool);
+                } catch (IOException e) {
+                    System.err.println("Could not delete allowlist import spool " + spool + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Replaces the list and, when restricted is not null, sets the course's flag in the same transaction,
+    // so nobody sees the course restricted with the old (or an empty) list
+    public ImportResult replace(Long courseId, Boolean restricted, Collection<String> emails) {
+        long rejected = 0;
+        List<String> normalized = new ArrayList<>(emails.size());
+        for (String raw : emails) {
+            if (raw == null || unquote(raw).isEmpty()) {
+                continue;
+            }
+            String email = normalize(raw);
+            if (email == null) {
+                rejected++;
+            } else {
+                normalized.add(email);
+            }
+        }
+        Diff diff = transactionTemplate.execute(status -> apply(courseId, restricted, normalized.iterator()));
+        return new ImportResult(normalized.size(), rejected, diff.added(), diff.removed(), diff.total());
+    }
+
+    private Diff apply(Long courseId, Boolean restricted, Iterator<String> emails) {
+        jdbcTemplate.execute("create temp table if not exists allowlist_import (email varchar(255) primary key) on commit drop");
+
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        while (emails.hasNext()) {
+            batch.add(new Object[]{emails.next()});
+            if (batch.size() >= batchSize) {
+                stage(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            stage(batch);
+        }
+
+        int removed = jdbcTemplate.update(
+                "delete from course_allowed_emails a where a.course_id = ? "
+                        + "and not exists (select 1 from allowlist_import i where i.email = a.email)",
+                courseId);
+        int added = jdbcTemplate.update(
+                "insert into course_allowed_emails (course_id, email) "
+                        + "select ?, i.email from allowlist_import i "
+                        + "where not exists (select 1 from course_allowed_emails a where a.course_id = ? and a.email = i.email)",
+                courseId, courseId);
+        Long total = jdbcTemplate.queryForObject("select count(*) from allowlist_import", Long.class);
+
+        // Who can see the course changed, so catalog validators (ContentVersions) must change too
+        int flagged = restricted == null ? 0 : jdbcTemplate.update(
+                "update courses set restricted_to_allow_list = ?, version = version + 1, updated_at = now() "
+                        + "where id = ? and restricted_to_allow_list <> ?",
+                restricted, courseId, restricted);
+        if (flagged == 0 && (added > 0 || removed > 0)) {
+            jdbcTemplate.update("update courses set updated_at = now() where id = ?", courseId);
+        }
+        return new Diff(added, removed, total != null ? total : 0);
+    }
+
+    private void stage(List<Object[]> batch) {
+        jdbcTemplate.batchUpdate("insert into allowlist_import (email) values (?) on conflict do nothing", batch);
+    }
+
+    private static String unquote(String raw) {
+        String value = raw.trim();
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1).trim();
+        }
+        return value;
+    }
+
+    static String normalize(String raw) {
+        if (raw == null) return null;
+        String email = unquote(raw).toLowerCase();
+        int at = email.indexOf('@');
+        if (at <= 0 || at == email.length() - 1 || email.length() > MAX_EMAIL_LENGTH || email.chars().anyMatch(Character::isWhitespace)) {
+            return null;
+        }
+        return email;
+    }
+}
@@ -0,0 +1,153 @@
+package com.jeremy.courses;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Allowlist membership checks without loading a course's email set.
+ *
+ * Each lookup is a point query on course_allowed_emails(course_id, email). When enabled, a per-course
+ * Bloom filter answers most "not on the list" cases from memory; a filter that says "maybe" still
+ * goes to the database, so the filter can only save queries, never grant access.
+ */
+@Service
+public class CourseAllowlistService {
+
+    private record CachedFilter(BloomFilter filter, long expiresAtMillis) {
+    }
+
+    private final CourseRepository courseRepository;
+    private final boolean bloomEnabled;
+    private final int bloomMinSize;
+    private final double falsePositiveRate;
+    private final long ttlMillis;
+
+    private final ConcurrentHashMap<Long, CachedFilter> filters = new ConcurrentHashMap<>();
+    // Per-course count of invalidations, so a rebuild that read the list before a change doesn't cache it
+    private final ConcurrentHashMap<Long, Long> generations = new ConcurrentHashMap<>();
+
+    public CourseAllowlistService(CourseRepository courseRepository,
+                                  @Value("${courses.allowlist.bloom.enabled:true}") boolean bloomEnabled,
+                                  @Value("${courses.allowlist.bloom.min-size:1000}") int bloomMinSize,
+                                  @Value("${courses.allowlist.bloom.false-positive-rate:0.01}") double falsePositiveRate,
+                                  @Value("${courses.allowlist.bloom.ttl-seconds:60}") long ttlSeconds) {
+        this.courseRepository = courseRepository;
+        this.bloomEnabled = bloomEnabled;
+        this.bloomMinSize = bloomMinSize;
+        this.falsePositiveRate = falsePositiveRate;
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    // Unrestricted courses allow everyone; restricted ones only allowlisted emails (case-insensitive)
+    public boolean isAllowed(Course course, String email) {
+        if (!course.isRestrictedToAllowList()) {
+            return true;
+        }
+        if (email == null || course.getId() == null) {
+            return false;
+        }
+        String normalized = email.trim().toLowerCase();
+
+        BloomFilter filter = filterFor(course.getId());
+        if (filter != null && !filter.mightContain(normalized)) {
+            return false;
+        }
+        return courseRepository.isEmailAllowListed(course.getId(), normalized);
+    }
+
+    // Call after the allowlist of a course changes (or the course is removed)
+    public void invalidate(Long courseId) {
+        if (courseId != null) {
+            // Under the same map lock as the conditional put in filterFor
+            filters.compute(courseId, (id, cached) -> {
+                generations.merge(id, 1L, Long::sum);
+                return null;
+            });
+        }
+    }
+
+    private BloomFilter filterFor(Long courseId) {
+        if (!bloomEnabled) {
+            return null;
+        }
+        CachedFilter cached = filters.get(courseId);
+        if (cached != null && cached.expiresAtMillis() > System.currentTimeMillis()) {
+            return cached.filter();
+        }
+
+        long generation = generations.getOrDefault(courseId, 0L);
+        // Small lists are cheap to check directly; remember that with a null filter
+        BloomFilter filter = null;
+        long size = courseRepository.countAllowedEmails(courseId);
+        if (size >= bloomMinSize) {
+            filter = new BloomFilter((int) size, falsePositiveRate);
+            List<String> emails = courseRepository.findAllowedEmails(courseId);
+            for (String email : emails) {
+                filter.put(email);
+            }
+        }
+        // TTL bounds how long another instance's allowlist changes can go unnoticed here.
+        // If the list changed locally while we were reading it, the filter may lack the new emails:
+        // drop it and answer from the database until the next lookup rebuilds.
+        CachedFilter built = new CachedFilter(filter, System.currentTimeMillis() + ttlMillis);
+        CachedFilter stored = filters.compute(courseId,
+                (id, current) -> generations.getOrDefault(id, 0L) == generation ? built : current);
+        return stored == built ? filter : null;
+    }
+
+    // Classic Bloom filter over a BitSet, k probes derived from two 64-bit hashes (double hashing)
+    static final class BloomFilter {
+
+        private final BitSet bits;
+        private final int bitCount;
+        private final int hashCount;
+
+        BloomFilter(int expectedInsertions, double falsePositiveRate) {
+            int n = Math.max(1, expectedInsertions);
+            long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bitCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(64, m));
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+            this.bits = new BitSet(bitCount);
+        }
+
+        void put(String value) {
+            long[] h = hashes(value);
+            for (int i = 0; i < hashCount; i++) {
+                bits.set(index(h, i));
+            }
+        }
+
+        boolean mightContain(String value) {
+            long[] h = hashes(value);
+            for (int i = 0; i < hashCount; i++) {
+                if (!bits.get(index(h, i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int index(long[] h, int i) {
+            return (int) Math.floorMod(h[0] + i * h[1], (long) bitCount);
+        }
+
+        // FNV-1a for the first hash, a finalized (splitmix64) variant of it for the second
+        private static long[] hashes(String value) {
+            long h1 = 0xcbf29ce484222325L;
+            for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+                h1 ^= b;
+                h1 *= 0x100000001b3L;
+            }
+            long h2 = h1 + 0x9e3779b97f4a7c15L;
+            h2 = (h2 ^ (h2 >>> 30)) * 0xbf58476d1ce4e5b9L;
+            h2 = (h2 ^ (h2 >>> 27)) * 0x94d049bb133111ebL;
+            h2 = h2 ^ (h2 >>> 31);
+            return new long[]{h1, h2 | 1};
+        }
+    }
+}
@@ -1,114 +1,166 @@
 package com.jeremy.courses;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.Reader;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Set;
 
 @RestController
 @RequestMapping("/courses")
 public class CourseController {
 
+    static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int DEFAULT_ALLOWLIST_PAGE_SIZE = 500;
+    private static final int MAX_ALLOWLIST_PAGE_SIZE = 1000;
+
     private final CourseRepository courseRepository;
-    private final UserRepository userRepository;
-    private final LessonRepository lessonRepository;
-    private final LessonProgressRepository lessonProgressRepository;
-    private final CourseEnrollmentRepository courseEnrollmentRepository;
+    private final CourseDeletionJobRepository courseDeletionJobRepository;
+    private final CourseDeletionService courseDeletionService;
+    private final PublicCatalogSnapshot publicCatalogSnapshot;
+    private final CourseAllowlistService courseAllowlistService;
+    private final CourseAllowlistImportService courseAllowlistImportService;
+    private final ContentVersions contentVersions;
 
     public CourseController(CourseRepository courseRepository,
-                            UserRepository userRepository,
-                            LessonRepository lessonRepository,
-                            LessonProgressRepository lessonProgressRepository,
-                            CourseEnrollmentRepository courseEnrollmentRepository) {
+                            CourseDeletionJobRepository courseDeletionJobRepository,
+                            CourseDeletionService courseDeletionService,
+                            PublicCatalogSnapshot publicCatalogSnapshot,
+                            CourseAllowlistService courseAllowlistService,
+                            CourseAllowlistImportService courseAllowlistImportService,
+                            ContentVersions contentVersions) {
         this.courseRepository = courseRepository;
-        this.userRepository = userRepository;
-        this.lessonRepository = lessonRepository;
-        this.lessonProgressRepository = lessonProgressRepository;
-        this.courseEnrollmentRepository = courseEnrollmentRepository;
+        this.courseDeletionJobRepository = courseDeletionJobRepository;
+        this.courseDeletionService = courseDeletionService;
+        this.publicCatalogSnapshot = publicCatalogSnapshot;
+        this.courseAllowlistService = courseAllowlistService;
+        this.courseAllowlistImportService = courseAllowlistImportService;
+        this.contentVersions = contentVersions;
     }
 
-    private User getCurrentUser(Authentication authentication) {
-        if (authentication == null || !authentication.isAuthenticated()) {
-            return null;
-        }
-        String email = authentication.getName();
-        return userRepository.findByEmail(email);
+    private boolean isAdmin(AuthenticatedUser user) {
+        return user != null && user.isAdmin();
     }
 
-    private boolean isAdmin(User user) {
-        return user != null && "ADMIN".equals(user.getRole());
+    private boolean isCourseAuthor(AuthenticatedUser user, Course course) {
+        return user != null && course.getAuthor() != null && course.getAuthor().getId().equals(user.id());
     }
 
-    private boolean isCourseAuthor(User user, Course course) {
-        return user != null && course.getAuthor() != null && course.getAuthor().getId().equals(user.getId());
-    }
-
-    private boolean canSeeCourse(User user, Course course) {
-        if (!course.isRestrictedToAllowList()) {
-            // Unrestricted courses are visible to everyone (even anonymous)
-            return true;
-        }
-        if (user == null) return false;
-        if (isAdmin(user) || isCourseAuthor(user, course)) return true;
-        return course.isEmailAllowed(user.getEmail());
+    private static int pageSize(Integer limit) {
+        if (limit == null || limit < 1) return DEFAULT_PAGE_SIZE;
+        return Math.min(limit, MAX_PAGE_SIZE);
     }
 
     // 1. GET method
+    // Keyset paginated: GET /courses?after=<last id>&limit=<n>. When more courses exist the
+    // X-Next-Cursor response header holds the value to pass as 'after' for the next page.
+    // Visibility (unrestricted, author, admin, allowlisted email) is applied in the query.
     @GetMapping
-    public ResponseEntity<?> getAllCourses(Authentication authentication) {
-        User user = getCurrentUser(authentication);
-
-        List<Course> all = courseRepository.findAll();
-        List<Course> visible = new ArrayList<>();
-        for (Course c : all) {
-            if (canSeeCourse(user, c)) {
-                visible.add(c);
+    public ResponseEntity<?> getAllCourses(@RequestParam(required = false) Long after,
+                                           @RequestParam(required = false) Integer limit,
+                                           AuthenticatedUser user,
+                                           WebRequest request) {
+        int pageSize = pageSize(limit);
+
+        // Anonymous landing page: serve the pre-serialized snapshot, or 304 if the client has it
+        if (user == null && after == null && pageSize == DEFAULT_PAGE_SIZE) {
+            PublicCatalogSnapshot.Snapshot snapshot = publicCatalogSnapshot.get();
+            if (request.checkNotModified(snapshot.etag())) {
+                return null;
             }
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .cacheControl(CacheControl.noCache())
+                    .eTag(snapshot.etag());
+            if (snapshot.nextCursor() != null) {
+                response.header("X-Next-Cursor", snapshot.nextCursor());
+            }
+            return response.body(snapshot.body());
+        }
+
+        Long userId = user != null ? user.id() : null;
+        String email = user != null ? user.email().toLowerCase() : null;
+        boolean admin = isAdmin(user);
+
+        // Any edit, deletion or allowlist change to a course on this page moves the stamp; the page query only runs on a miss
+        long from = after != null ? after : 0L;
+        ContentVersions.Stamp stamp = contentVersions.catalog(from, userId, email, admin, pageSize);
+        if (request.checkNotModified(stamp.etag(), stamp.lastModifiedMillis())) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .eTag(stamp.etag());
+        if (stamp.lastModified() != null) {
+            response.lastModified(stamp.lastModified());
         }
 
-        return ResponseEntity.ok(visible);
+        List<CourseSummary> page = courseRepository.findVisiblePage(from, userId, email, admin, Limit.of(pageSize + 1));
+        return keysetPage(response, page, pageSize);
+    }
+
+    private ResponseEntity<?> keysetPage(List<CourseSummary> page, int pageSize) {
+        return keysetPage(ResponseEntity.ok(), page, pageSize);
+    }
+
+    // Trims the extra look-ahead row and advertises the next cursor when there is one
+    private ResponseEntity<?> keysetPage(ResponseEntity.BodyBuilder response, List<CourseSummary> page, int pageSize) {
+        if (page.size() > pageSize) {
+            page = page.subList(0, pageSize);
+            response.header("X-Next-Cursor", String.valueOf(page.get(pageSize - 1).id()));
+        }
+        return response.body(page);
     }
 
     // 2. POST method (Make sure this is OUTSIDE the method above!)
     @PostMapping
     @PreAuthorize("hasRole('CREATOR') or hasRole('ADMIN')")
     public Course createCourse(@RequestBody Course course) {
-        return courseRepository.save(course);
+        // The initial allowlist is normalized and written like a PUT /access one; until then a restricted
+        // course admits nobody
+        Set<String> emails = course.getAllowedEmails();
+        course.setAllowedEmails(new HashSet<>());
+        Course saved = courseRepository.save(course);
+        if (emails != null && !emails.isEmpty()) {
+            courseAllowlistImportService.replace(saved.getId(), null, emails);
+            courseAllowlistService.invalidate(saved.getId());
+        }
+        publicCatalogSnapshot.markStale();
+        return saved;
     }
 
-    // 3. Get courses created by the currently authenticated creator/admin
+    // 3. Get courses created by the currently authenticated creator/admin (keyset paginated like GET /courses)
     @GetMapping("/my-created")
     @PreAuthorize("hasRole('CREATOR') or hasRole('ADMIN')")
-    public ResponseEntity<?> getMyCreatedCourses(Authentication authentication) {
-        if (authentication == null || !authentication.isAuthenticated()) {
-            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
-        }
-
-        String email = authentication.getName();
-        User user = userRepository.findByEmail(email);
+    public ResponseEntity<?> getMyCreatedCourses(@RequestParam(required = false) Long after,
+                                                 @RequestParam(required = false) Integer limit,
+                                                 AuthenticatedUser user) {
         if (user == null) {
-            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
         }
 
-        List<Course> all = courseRepository.findAll();
-        List<Course> created = new ArrayList<>();
-        for (Course c : all) {
-            if (c.getAuthor() != null && c.getAuthor().getId().equals(user.getId())) {
-                created.add(c);
-            }
-        }
-        return ResponseEntity.ok(created);
+        int pageSize = pageSize(limit);
+        List<CourseSummary> page = courseRepository.findAuthoredPage(
+                user.id(), after != null ? after : 0L, Limit.of(pageSize + 1));
+        return keysetPage(page, pageSize);
     }
 
+    // Allowlisted emails are paged in email order: ?after=<last email>&limit=<n>, next cursor in X-Next-Cursor
     @PreAuthorize("hasRole('CREATOR') or hasRole('ADMIN')")
     @GetMapping("/{courseId}/access")
-    public ResponseEntity<?> getCourseAccess(@PathVariable Long courseId, Authentication authentication) {
-        User user = getCurrentUser(authentication);
+    public ResponseEntity<?> getCourseAccess(@PathVariable Long courseId,
+                                             @RequestParam(required = false) String after,
+                                             @RequestParam(required = false) Integer limit,
+                                             AuthenticatedUser user) {
         Course course = courseRepository.findById(courseId).orElse(null);
         if (course == null) {
             return ResponseEntity.status(404).body(Map.of("error", "Course not found"));
@@ -117,9 +169,18 @@ public class CourseController {
             return ResponseEntity.status(403).body(Map.of("error", "Not allowed to view access settings for this course"));
         }
 
-        return ResponseEntity.ok(Map.of(
+        int pageSize = (limit == null || limit < 1) ? DEFAULT_ALLOWLIST_PAGE_SIZE : Math.min(limit, MAX_ALLOWLIST_PAGE_SIZE);
+        List<String> emails = courseRepository.findAllowedEmailsPage(courseId, after != null ? after : "", pageSize + 1);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (emails.size() > pageSize) {
+            emails = emails.subList(0, pageSize);
+            response.header("X-Next-Cursor", emails.get(pageSize - 1));
+        }
+        return response.body(Map.of(
                 "restrictedToAllowList", course.isRestrictedToAllowList(),
-                "allowedEmails", course.getAllowedEmails()
+                "allowedEmailCount", courseRepository.countAllowedEmails(courseId),
+                "allowedEmails", emails
         ));
     }
 
@@ -128,9 +189,8 @@ public class CourseController {
     public ResponseEntity<?> updateCourseAccess(
             @PathVariable Long courseId,
             @RequestBody Map<String, Object> body,
-            Authentication authentication
+            AuthenticatedUser user
     ) {
-        User user = getCurrentUser(authentication);
         Course course = courseRepository.findById(courseId).orElse(null);
         if (course == null) {
             return ResponseEntity.status(404).body(Map.of("error", "Course not found"));
@@ -144,31 +204,51 @@ public class CourseController {
 
         @SuppressWarnings("unchecked")
         List<String> emails = (List<String>) body.getOrDefault("allowedEmails", java.util.Collections.emptyList());
-        Set<String> normalized = new HashSet<>();
-        for (String e : emails) {
-            if (e != null) {
-                String trimmed = e.trim().toLowerCase();
-                if (!trimmed.isEmpty()) {
-                    normalized.add(trimmed);
-                }
-            }
+
+        // Flag and list change in one transaction; the allowlist collection is never loaded
+        CourseAllowlistImportService.ImportResult result = courseAllowlistImportService.replace(courseId, restricted, emails);
+        courseAllowlistService.invalidate(courseId);
+        publicCatalogSnapshot.markStale();
+
+        return ResponseEntity.ok(Map.of(
+                "restrictedToAllowList", restricted,
+                "allowedEmailCount", result.total(),
+                "added", result.added(),
+                "removed", result.removed()
+        ));
+    }
+
+    // Streaming allowlist replacement for large lists: CSV or one email per line, any size.
+    // Only the difference against the stored list is written.
+    @PreAuthorize("hasRole('CREATOR') or hasRole('ADMIN')")
+    @PutMapping(value = "/{courseId}/access/emails", consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<?> importCourseAllowlist(@PathVariable Long courseId, Reader body, AuthenticatedUser user) {
+        Course course = courseRepository.findById(courseId).orElse(null);
+        if (course == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Course not found"));
+        }
+        if (!isAdmin(user) && !isCourseAuthor(user, course)) {
+            return ResponseEntity.status(403).body(Map.of("error", "Not allowed to modify access for this course"));
         }
 
-        course.setRestrictedToAllowList(restricted);
-        course.setAllowedEmails(normalized);
-        courseRepository.save(course);
+        CourseAllowlistImportService.ImportResult result = courseAllowlistImportService.replaceFrom(courseId, body);
+        courseAllowlistService.invalidate(courseId);
 
         return ResponseEntity.ok(Map.of(
-                "restrictedToAllowList", course.isRestrictedToAllowList(),
-                "allowedEmails", course.getAllowedEmails()
+                "received", result.received(),
+                "rejected", result.rejected(),
+                "added", result.added(),
+                "removed", result.removed(),
+                "allowedEmailCount", result.total()
         ));
     }
 
-    // 4. Delete a course (creator can delete their own courses, admin can delete any)
+    // 4. Delete a course (creator can delete their own courses, admin can delete any).
+    // The course disappears immediately; its lessons, enrollments and progress are removed by a
+    // background job whose status is at GET /courses/deletion-jobs/{jobId}.
     @PreAuthorize("hasRole('CREATOR') or hasRole('ADMIN')")
     @DeleteMapping("/{courseId}")
-    public ResponseEntity<?> deleteCourse(@PathVariable Long courseId, Authentication authentication) {
-        User user = getCurrentUser(authentication);
+    public ResponseEntity<?> deleteCourse(@PathVariable Long courseId, AuthenticatedUser user) {
         if (user == null) {
             return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
         }
@@ -182,22 +262,37 @@ public class CourseController {
             return ResponseEntity.status(403).body(Map.of("error", "Not allowed to delete this course"));
         }
 
-        // Clean up related data: lesson progress, lessons, enrollments, then course
-        List<Lesson> lessons = lessonRepository.findByCourseId(courseId);
-        for (Lesson lesson : lessons) {
-            lessonProgressRepository.deleteByLessonId(lesson.getId());
+        CourseDeletionJob job = courseDeletionService.requestDeletion(courseId, user.id());
+        if (job == null) {
+            // Another request flagged it first
+            return ResponseEntity.status(404).body(Map.of("error", "Course not found"));
         }
-        lessonRepository.deleteAll(lessons);
+        courseAllowlistService.invalidate(courseId);
+        publicCatalogSnapshot.markStale();
 
-        // Remove enrollments for this course
-        courseEnrollmentRepository.deleteAll(
-                courseEnrollmentRepository.findAll().stream()
-                        .filter(e -> e.getCourse().getId().equals(courseId))
-                        .toList()
-        );
+        return ResponseEntity.accepted().body(Map.of(
+                "message", "Course deletion started",
+                "jobId", job.getId(),
+                "status", job.getStatus()
+        ));
+    }
 
-        courseRepository.delete(course);
+    @PreAuthorize("hasRole('CREATOR') or hasRole('ADMIN')")
+    @GetMapping("/deletion-jobs/{jobId}")
+    public ResponseEntity<?> getDeletionJob(@PathVariable Long jobId, AuthenticatedUser user) {
+        CourseDeletionJob job = courseDeletionJobRepository.findById(jobId).orElse(null);
+        if (job == null || (!isAdmin(user) && (user == null || !user.id().equals(job.getRequestedBy())))) {
+            return ResponseEntity.status(404).body(Map.of("error", "Deletion job not found"));
+        }
 
-        return ResponseEntity.ok(Map.of("message", "Course deleted"));
+        Map<String, Object> body = new java.util.HashMap<>();
+        body.put("jobId", job.getId());
+        body.put("courseId", job.getCourseId());
+        body.put("status", job.getStatus());
+        body.put("rowsDeleted", job.getRowsDeleted());
+        body.put("createdAt", job.getCreatedAt().toString());
+        body.put("finishedAt", job.getFinishedAt() != null ? job.getFinishedAt().toString() : null);
+        body.put("error", job.getError());
+        return ResponseEntity.ok(body);
     }
 }
@@ -0,0 +1,96 @@
+package com.jeremy.courses;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Tracks the background removal of a soft-deleted course and everything under it.
+ * Status moves PENDING -> RUNNING -> COMPLETED (or FAILED, and RUNNING again on retry); updatedAt
+ * doubles as a heartbeat so a job abandoned by a crashed instance can be picked up again.
+ */
+@Entity
+@Table(name = "course_deletion_jobs", indexes = {
+    @Index(name = "idx_course_deletion_jobs_status", columnList = "status")
+})
+public class CourseDeletionJob {
+
+    public static final String PENDING = "PENDING";
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "course_id", nullable = false)
+    private Long courseId;
+
+    @Column(name = "requested_by")
+    private Long requestedBy;
+
+    @Column(nullable = false, length = 16)
+    private String status = PENDING;
+
+    @Column(name = "rows_deleted", nullable = false)
+    private long rowsDeleted = 0;
+
+    @Column(length = 1000)
+    private String error;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+
+    public CourseDeletionJob() {
+    }
+
+    public CourseDeletionJob(Long courseId, Long requestedBy) {
+        this.courseId = courseId;
+        this.requestedBy = requestedBy;
+        this.createdAt = Instant.now();
+        this.updatedAt = this.createdAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getCourseId() {
+        return courseId;
+    }
+
+    public Long getRequestedBy() {
+        return requestedBy;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public long getRowsDeleted() {
+        return rowsDeleted;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+}
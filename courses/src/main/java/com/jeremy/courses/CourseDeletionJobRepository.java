@@ -0,0 +1,35 @@
+package com.jeremy.courses;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface CourseDeletionJobRepository extends JpaRepository<CourseDeletionJob, Long> {
+
+    // Pending jobs, plus running ones whose worker stopped sending heartbeats and failed ones due a retry
+    @Query("select j.id from CourseDeletionJob j where j.status = 'PENDING' "
+            + "or (j.status in ('RUNNING', 'FAILED') and j.updatedAt < :staleBefore) order by j.id")
+    List<Long> findRunnableIds(Instant staleBefore);
+
+    // Atomic claim so only one worker (on any instance) runs a given job
+    @Transactional
+    @Modifying
+    @Query("update CourseDeletionJob j set j.status = 'RUNNING', j.updatedAt = :now "
+            + "where j.id = :id and (j.status = 'PENDING' or (j.status in ('RUNNING', 'FAILED') and j.updatedAt < :staleBefore))")
+    int claim(Long id, Instant now, Instant staleBefore);
+
+    @Transactional
+    @Modifying
+    @Query("update CourseDeletionJob j set j.rowsDeleted = j.rowsDeleted + :rows, j.updatedAt = :now where j.id = :id")
+    int recordProgress(Long id, long rows, Instant now);
+
+    @Transactional
+    @Modifying
+    @Query("update CourseDeletionJob j set j.status = :status, j.error = :error, j.updatedAt = :now, j.finishedAt = :now "
+            + "where j.id = :id")
+    int finish(Long id, String status, String error, Instant now);
+}
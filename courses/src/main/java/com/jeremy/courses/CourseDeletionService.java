@@ -0,0 +1,145 @@
+package com.jeremy.courses;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntSupplier;
+
+/**
+ * Deletes courses in the background.
+ *
+ * A delete request only flags the course (hiding it everywhere) and records a CourseDeletionJob.
+ * A worker then removes progress, enrollments, lessons and allowlist rows with chunked set-based
+ * DELETEs, each chunk in its own short transaction, and finally the course row itself.
+ * Every step is idempotent, so a job interrupted by a restart is simply run again. A FAILED job is
+ * retried once it has been failed for stale-after-seconds: enrollments and completions are refused
+ * for a flagged course, but one in flight while it was flagged can still land after its chunk ran.
+ */
+@Service
+public class CourseDeletionService {
+
+    private final CourseRepository courseRepository;
+    private final LessonRepository lessonRepository;
+    private final CourseEnrollmentRepository courseEnrollmentRepository;
+    private final LessonProgressRepository lessonProgressRepository;
+    private final CourseDeletionJobRepository jobRepository;
+    private final int batchSize;
+    private final Duration staleAfter;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "course-deletion");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Jobs already queued on this instance
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+
+    public CourseDeletionService(CourseRepository courseRepository,
+                                 LessonRepository lessonRepository,
+                                 CourseEnrollmentRepository courseEnrollmentRepository,
+                                 LessonProgressRepository lessonProgressRepository,
+                                 CourseDeletionJobRepository jobRepository,
+                                 @Value("${courses.deletion.batch-size:1000}") int batchSize,
+                                 @Value("${courses.deletion.stale-after-seconds:600}") long staleAfterSeconds) {
+        this.courseRepository = courseRepository;
+        this.lessonRepository = lessonRepository;
+        this.courseEnrollmentRepository = courseEnrollmentRepository;
+        this.lessonProgressRepository = lessonProgressRepository;
+        this.jobRepository = jobRepository;
+        this.batchSize = batchSize;
+        this.staleAfter = Duration.ofSeconds(staleAfterSeconds);
+    }
+
+    // Returns null when the course was already flagged by a concurrent request. The flag and the job
+    // commit together, and the worker only starts once they have.
+    @Transactional
+    public CourseDeletionJob requestDeletion(Long courseId, Long requestedBy) {
+        if (courseRepository.markDeleted(courseId) == 0) {
+            return null;
+        }
+        CourseDeletionJob job = jobRepository.save(new CourseDeletionJob(courseId, requestedBy));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                enqueue(job.getId());
+            }
+        });
+        return job;
+    }
+
+    // Picks up jobs left behind by restarts or by other instances that went away, and retries failed ones
+    @Scheduled(fixedDelayString = "${courses.deletion.poll-interval-ms:30000}",
+            initialDelayString = "${courses.deletion.poll-interval-ms:30000}")
+    public void resumeRunnableJobs() {
+        for (Long jobId : jobRepository.findRunnableIds(Instant.now().minus(staleAfter))) {
+            enqueue(jobId);
+        }
+    }
+
+    private void enqueue(Long jobId) {
+        if (queued.add(jobId)) {
+            worker.execute(() -> {
+                try {
+                    run(jobId);
+                } finally {
+                    queued.remove(jobId);
+                }
+            });
+        }
+    }
+
+    private void run(Long jobId) {
+        Instant now = Instant.now();
+        if (jobRepository.claim(jobId, now, now.minus(staleAfter)) == 0) {
+            return;
+        }
+        CourseDeletionJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return;
+        }
+        Long courseId = job.getCourseId();
+
+        try {
+            // Children first so foreign keys never block a chunk
+            deleteInChunks(jobId, () -> lessonProgressRepository.deleteBatchByCourseId(courseId, batchSize));
+            deleteInChunks(jobId, () -> courseEnrollmentRepository.deleteBatchByCourseId(courseId, batchSize));
+            deleteInChunks(jobId, () -> lessonRepository.deleteBatchByCourseId(courseId, batchSize));
+            deleteInChunks(jobId, () -> courseRepository.deleteAllowedEmailsBatch(courseId, batchSize));
+            deleteInChunks(jobId, () -> courseRepository.purgeDeleted(courseId));
+
+            jobRepository.finish(jobId, CourseDeletionJob.COMPLETED, null, Instant.now());
+        } catch (RuntimeException e) {
+            System.err.println("Course deletion job " + jobId + " failed: " + e.getMessage());
+            String message = String.valueOf(e.getMessage());
+            jobRepository.finish(jobId, CourseDeletionJob.FAILED,
+                    message.length() > 1000 ? message.substring(0, 1000) : message, Instant.now());
+        }
+    }
+
+    private void deleteInChunks(Long jobId, IntSupplier chunk) {
+        int deleted;
+        do {
+            deleted = chunk.getAsInt();
+            if (deleted > 0) {
+                // Doubles as the heartbeat that keeps other instances from re-claiming the job
+                jobRepository.recordProgress(jobId, deleted, Instant.now());
+            }
+        } while (deleted >= batchSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+}
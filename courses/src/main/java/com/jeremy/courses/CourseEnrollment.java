@@ -1,16 +1,24 @@
 package com.jeremy.courses;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "course_enrollments", uniqueConstraints = {
     @UniqueConstraint(columnNames = {"user_id", "course_id"})
+}, indexes = {
+    @Index(name = "idx_course_enrollments_course_id", columnList = "course_id"),
+    @Index(name = "idx_course_enrollments_user_enrolled_at", columnList = "user_id, enrolled_at, id")
 })
 public class CourseEnrollment {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "course_enrollments_seq")
+    @SequenceGenerator(name = "course_enrollments_seq", sequenceName = "course_enrollments_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
@@ -24,6 +32,26 @@ public class CourseEnrollment {
     @Column(nullable = false)
     private LocalDateTime enrolledAt;
 
+    // Optimistic lock and ETag source: bumped on every update (set-based SQL updates bump it explicitly)
+    @JsonIgnore
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint not null default 0")
+    private Long version;
+
+    @JsonIgnore
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false, columnDefinition = "timestamp(6) with time zone not null default now()")
+    private Instant updatedAt;
+
+    // Both maintained in SQL by ProgressCounters, never written from the entity
+    @Column(name = "completed_lessons", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "integer not null default 0")
+    private int completedLessons;
+
+    @Column(name = "last_activity_at", insertable = false, updatable = false,
+            columnDefinition = "timestamp(6) with time zone")
+    private Instant lastActivityAt;
+
     public CourseEnrollment() {
         this.enrolledAt = LocalDateTime.now();
     }
@@ -61,6 +89,20 @@ public class CourseEnrollment {
     public void setEnrolledAt(LocalDateTime enrolledAt) {
         this.enrolledAt = enrolledAt;
     }
-}
 
+    public Long getVersion() {
+        return version;
+    }
 
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public int getCompletedLessons() {
+        return completedLessons;
+    }
+
+    public Instant getLastActivityAt() {
+        return lastActivityAt;
+    }
+}
@@ -1,6 +1,11 @@
 package com.jeremy.courses;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -8,6 +13,36 @@ public interface CourseEnrollmentRepository extends JpaRepository<CourseEnrollme
     List<CourseEnrollment> findByUserId(Long userId);
     Optional<CourseEnrollment> findByUserIdAndCourseId(Long userId, Long courseId);
     boolean existsByUserIdAndCourseId(Long userId, Long courseId);
+
+    // Keyset page of the courses the user is enrolled in, skipping courses that are being deleted, in enrollment
+    // order. Keyed by (enrolledAt, id) on idx_course_enrollments_user_enrolled_at, since ids come from a pooled
+    // sequence and don't follow enrolledAt across instances. The counts come from the counter columns kept by
+    // ProgressCounters, so nothing is recounted.
+    @Query("select new com.jeremy.courses.EnrolledCourse(e.id, c.id, c.title, c.description, c.restrictedToAllowList, "
+            + "a.id, a.name, e.enrolledAt, e.lastActivityAt, c.lessonCount, e.completedLessons) "
+            + "from CourseEnrollment e join e.course c left join c.author a "
+            + "where e.user.id = :userId order by e.enrolledAt, e.id")
+    List<EnrolledCourse> findEnrolledCourses(Long userId, Limit limit);
+
+    @Query("select new com.jeremy.courses.EnrolledCourse(e.id, c.id, c.title, c.description, c.restrictedToAllowList, "
+            + "a.id, a.name, e.enrolledAt, e.lastActivityAt, c.lessonCount, e.completedLessons) "
+            + "from CourseEnrollment e join e.course c left join c.author a "
+            + "where e.user.id = :userId "
+            + "and (e.enrolledAt > :afterEnrolledAt or (e.enrolledAt = :afterEnrolledAt and e.id > :afterId)) "
+            + "order by e.enrolledAt, e.id")
+    List<EnrolledCourse> findEnrolledCoursesAfter(Long userId, LocalDateTime afterEnrolledAt, Long afterId, Limit limit);
+
+    @Query("select new com.jeremy.courses.EnrolledCourse(e.id, c.id, c.title, c.description, c.restrictedToAllowList, "
+            + "a.id, a.name, e.enrolledAt, e.lastActivityAt, c.lessonCount, e.completedLessons) "
+            + "from CourseEnrollment e join e.course c left join c.author a "
+            + "where e.user.id = :userId and c.id = :courseId")
+    Optional<EnrolledCourse> findEnrolledCourse(Long userId, Long courseId);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM course_enrollments WHERE id IN "
+            + "(SELECT id FROM course_enrollments WHERE course_id = :courseId LIMIT :batchSize)", nativeQuery = true)
+    int deleteBatchByCourseId(Long courseId, int batchSize);
 }
 
 
@@ -1,7 +1,67 @@
 package com.jeremy.courses;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
 
 public interface CourseRepository extends JpaRepository<Course, Long> {
-    // We can add custom queries here later.
+
+    // Keyset page of courses the caller may see: unrestricted, authored by them, any course for admins,
+    // or restricted courses whose allowlist contains their email. Anonymous callers pass null userId/email.
+    @Query("select new com.jeremy.courses.CourseSummary(c.id, c.title, c.description, c.restrictedToAllowList, a.id, a.name) "
+            + "from Course c left join c.author a "
+            + "where c.id > :after "
+            + "and (c.restrictedToAllowList = false "
+            + "or :isAdmin = true "
+            + "or c.author.id = :userId "
+            + "or :email member of c.allowedEmails) "
+            + "order by c.id")
+    List<CourseSummary> findVisiblePage(Long after, Long userId, String email, boolean isAdmin, Limit limit);
+
+    // Keyset page of one author's courses (uses idx_courses_author_id)
+    @Query("select new com.jeremy.courses.CourseSummary(c.id, c.title, c.description, c.restrictedToAllowList, a.id, a.name) "
+            + "from Course c join c.author a "
+            + "where a.id = :authorId and c.id > :after order by c.id")
+    List<CourseSummary> findAuthoredPage(Long authorId, Long after, Limit limit);
+
+    // --- Allowlist (course_allowed_emails), queried directly so the collection is never loaded ---
+
+    @Query(value = "select exists (select 1 from course_allowed_emails where course_id = :courseId and email = :email)",
+            nativeQuery = true)
+    boolean isEmailAllowListed(Long courseId, String email);
+
+    @Query(value = "select count(*) from course_allowed_emails where course_id = :courseId", nativeQuery = true)
+    long countAllowedEmails(Long courseId);
+
+    @Query(value = "select email from course_allowed_emails where course_id = :courseId", nativeQuery = true)
+    List<String> findAllowedEmails(Long courseId);
+
+    // Keyset page of allowlisted emails, ordered by email
+    @Query(value = "select email from course_allowed_emails where course_id = :courseId and email > :after "
+            + "order by email limit :limit", nativeQuery = true)
+    List<String> findAllowedEmailsPage(Long courseId, String after, int limit);
+
+    // --- Deletion (see CourseDeletionService). Native so they also reach soft-deleted rows ---
+
+    // Hides the course from every entity query right away (Course has @SQLRestriction("deleted = false"))
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE courses SET deleted = true, version = version + 1, updated_at = now() "
+            + "WHERE id = :courseId AND deleted = false", nativeQuery = true)
+    int markDeleted(Long courseId);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM course_allowed_emails WHERE ctid IN "
+            + "(SELECT ctid FROM course_allowed_emails WHERE course_id = :courseId LIMIT :batchSize)", nativeQuery = true)
+    int deleteAllowedEmailsBatch(Long courseId, int batchSize);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM courses WHERE id = :courseId AND deleted = true", nativeQuery = true)
+    int purgeDeleted(Long courseId);
 }
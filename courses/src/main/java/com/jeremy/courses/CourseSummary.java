@@ -0,0 +1,17 @@
+package com.jeremy.courses;
+
+/**
+ * Read model for course listings: only the columns the catalog needs, with the author
+ * flattened to id + display name (no email, role or allowlist).
+ */
+public record CourseSummary(Long id, String title, String description, boolean restrictedToAllowList,
+                            Long authorId, String authorName) {
+
+    public static CourseSummary of(Course course) {
+        User author = course.getAuthor();
+        return new CourseSummary(course.getId(), course.getTitle(), course.getDescription(),
+                course.isRestrictedToAllowList(),
+                author != null ? author.getId() : null,
+                author != null ? author.getName() : null);
+    }
+}
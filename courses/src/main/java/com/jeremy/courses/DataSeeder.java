@@ -11,7 +11,7 @@ public class DataSeeder implements CommandLineRunner {
 
     private final UserRepository userRepository;
     private final CourseRepository courseRepository;
-    private final LessonRepository lessonRepository;
+    private final LessonContentStore lessonContentStore;
     private final PasswordEncoder passwordEncoder;
 
     @Value("${APP_ADMIN_EMAIL:admin@example.com}")
@@ -27,10 +27,10 @@ public class DataSeeder implements CommandLineRunner {
     private String studentPassword;
 
     // 2. Inject it in the constructor
-    public DataSeeder(UserRepository u, CourseRepository c, LessonRepository l, PasswordEncoder pe) {
+    public DataSeeder(UserRepository u, CourseRepository c, LessonContentStore l, PasswordEncoder pe) {
         this.userRepository = u;
         this.courseRepository = c;
-        this.lessonRepository = l;
+        this.lessonContentStore = l;
         this.passwordEncoder = pe;
     }
 
@@ -77,7 +77,8 @@ public class DataSeeder implements CommandLineRunner {
                     "http://files.example.com/loop_cheat_sheet.pdf", // <--- PDF URL
                     javaCourse);
 
-            lessonRepository.saveAll(List.of(l1, l2, l3));
+            // Through the content store so positions and the course's lesson count are set
+            lessonContentStore.createAll(javaCourse.getId(), List.of(l1, l2, l3));
 
             System.out.println("✅ Seeding complete! Users, Courses, and Lessons created.");
         }
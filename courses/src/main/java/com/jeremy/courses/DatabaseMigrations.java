@@ -0,0 +1,112 @@
+package com.jeremy.courses;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.boot.jpa.autoconfigure.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Migrations of existing tables that must be done before Hibernate starts (and so before the web server
+ * takes requests): the entity mappings assume they have run. Only plain JDBC is used, since JPA and its
+ * transaction manager don't exist yet. On a fresh database the tables don't exist yet either; every step
+ * skips them, and DatabaseSchemaInitializer repeats the sequence step once Hibernate has created them.
+ */
+@Component
+public class DatabaseMigrations {
+
+    // Makes the EntityManagerFactory (and everything built on it) wait for the migrations
+    @Component
+    static class BeforeJpa extends EntityManagerFactoryDependsOnPostProcessor {
+        BeforeJpa() {
+            super(DatabaseMigrations.class);
+        }
+    }
+
+    // Tables whose entities use a pooled "<table>_seq" sequence (allocationSize 50) instead of IDENTITY.
+    // Older databases still have an identity column: it is dropped, the id default points at the sequence
+    // (for plain SQL inserts), and the sequence is moved past the existing ids. A pooled block ends at the
+    // value nextval returns, so the next value must be at least max(id) + 50.
+    private static final List<String> SEQUENCE_TABLES = List.of("lessons", "courses", "course_enrollments", "lesson_progress");
+
+    private static final String SEQUENCE_ID_MIGRATION = """
+            DO $$
+            DECLARE max_id bigint;
+            BEGIN
+                IF to_regclass('%1$s') IS NULL THEN
+                    RETURN;
+                END IF;
+                CREATE SEQUENCE IF NOT EXISTS %1$s_seq START WITH 1 INCREMENT BY 50;
+                IF EXISTS (SELECT 1 FROM information_schema.columns WHERE table_schema = current_schema()
+                           AND table_name = '%1$s' AND column_name = 'id' AND is_identity = 'YES') THEN
+                    ALTER TABLE %1$s ALTER COLUMN id DROP IDENTITY;
+                END IF;
+                IF EXISTS (SELECT 1 FROM information_schema.columns WHERE table_schema = current_schema()
+                           AND table_name = '%1$s' AND column_name = 'id'
+                           AND column_default IS DISTINCT FROM 'nextval(''%1$s_seq''::regclass)') THEN
+                    ALTER TABLE %1$s ALTER COLUMN id SET DEFAULT nextval('%1$s_seq');
+                END IF;
+                SELECT coalesce(max(id), 0) INTO max_id FROM %1$s;
+                IF (SELECT CASE WHEN is_called THEN last_value < max_id ELSE last_value - 49 <= max_id END FROM %1$s_seq) THEN
+                    PERFORM setval('%1$s_seq', max_id + 50, false);
+                END IF;
+            END $$""";
+
+    private record Migration(String id, String sql) {
+    }
+
+    // Changes that rewrite a whole table, so they must not be retried on every startup: each one runs once per
+    // database and is recorded in schema_migrations in the same transaction.
+    private static final List<Migration> MIGRATIONS = List.of(
+            // Lessons' search_vector predates compressed_search; drop it so DatabaseSchemaInitializer re-adds it
+            // with the new expression
+            new Migration("lessons-search-vector-compressed-search", "DO $$ BEGIN "
+                    + "IF EXISTS (SELECT 1 FROM information_schema.columns WHERE table_schema = current_schema() "
+                    + "AND table_name = 'lessons' AND column_name = 'search_vector' "
+                    + "AND generation_expression NOT LIKE '%compressed_search%') THEN "
+                    + "ALTER TABLE lessons DROP COLUMN search_vector; "
+                    + "END IF; "
+                    + "END $$")
+    );
+
+    // Held while migrations run so instances starting together apply each one once
+    private static final long MIGRATION_LOCK = 0x4D4947L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public DatabaseMigrations(JdbcTemplate jdbcTemplate, DataSource dataSource) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @PostConstruct
+    public void migrate() {
+        migrateSequences();
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS schema_migrations ("
+                + "id varchar(100) PRIMARY KEY, applied_at timestamp(6) with time zone NOT NULL DEFAULT now())");
+        for (Migration migration : MIGRATIONS) {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.query("SELECT pg_advisory_xact_lock(?)", rs -> null, MIGRATION_LOCK);
+                Integer applied = jdbcTemplate.queryForObject(
+                        "SELECT count(*) FROM schema_migrations WHERE id = ?", Integer.class, migration.id());
+                if (applied != null && applied == 0) {
+                    System.out.println("Applying schema migration " + migration.id());
+                    jdbcTemplate.execute(migration.sql());
+                    jdbcTemplate.update("INSERT INTO schema_migrations (id) VALUES (?)", migration.id());
+                }
+            });
+        }
+    }
+
+    // Idempotent; a no-op once a table is on its sequence
+    public void migrateSequences() {
+        for (String table : SEQUENCE_TABLES) {
+            jdbcTemplate.execute(SEQUENCE_ID_MIGRATION.formatted(table));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.jeremy.courses;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * PostgreSQL-specific schema that Hibernate's ddl-auto cannot express (generated columns,
+ * GIN indexes). Runs while the context starts, after Hibernate has created/updated the tables and
+ * before the web server accepts requests. Every statement is idempotent; migrations of existing
+ * tables run earlier, before Hibernate (see DatabaseMigrations).
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class DatabaseSchemaInitializer {
+
+    private static final List<String> STATEMENTS = List.of(
+            // Full-text search (see SearchService); generated columns keep the vectors current on every insert/update
+            "ALTER TABLE courses ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS ("
+                    + "setweight(to_tsvector('english', coalesce(title, '')), 'A') || "
+                    + "setweight(to_tsvector('english', coalesce(description, '')), 'B')) STORED",
+            "CREATE INDEX IF NOT EXISTS idx_courses_search_vector ON courses USING GIN (search_vector)",
+            // Gzipped lesson bodies (see LessonContentStore) live in content_gzip, which Lesson doesn't map, and
+            // can't be read by SQL, so their vector is written by the application into compressed_search and
+            // folded in here (older databases get the new expression through a one-off migration, see DatabaseMigrations)
+            "ALTER TABLE lessons ADD COLUMN IF NOT EXISTS content_gzip bytea",
+            "ALTER TABLE lessons ADD COLUMN IF NOT EXISTS compressed_search tsvector",
+            "ALTER TABLE lessons ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS ("
+                    + "setweight(to_tsvector('english', coalesce(title, '')), 'A') || "
+                    + "setweight(to_tsvector('english', coalesce(content, '')), 'B') || "
+                    + "coalesce(compressed_search, ''::tsvector)) STORED",
+            "CREATE INDEX IF NOT EXISTS idx_lessons_search_vector ON lessons USING GIN (search_vector)",
+
+            // One lesson per position within a course (see LessonOrderingService). Deferred so a reorder can
+            // swap positions inside one transaction. Courses that already have duplicates are renumbered first.
+            "DO $$ BEGIN "
+                    + "IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'uk_lessons_course_order_index') THEN "
+                    + "WITH ranked AS (SELECT id, row_number() OVER (PARTITION BY course_id ORDER BY order_index, id) AS rn "
+                    + "  FROM lessons WHERE order_index IS NOT NULL AND course_id IN ("
+                    + "    SELECT course_id FROM lessons WHERE order_index IS NOT NULL "
+                    + "    GROUP BY course_id, order_index HAVING count(*) > 1)) "
+                    + "UPDATE lessons l SET order_index = r.rn FROM ranked r WHERE r.id = l.id; "
+                    + "ALTER TABLE lessons ADD CONSTRAINT uk_lessons_course_order_index "
+                    + "UNIQUE (course_id, order_index) DEFERRABLE INITIALLY DEFERRED; "
+                    + "END IF; "
+                    + "END $$",
+            // Legacy lessons without a position go after the course's others, GAP apart, so every lesson has one
+            // and positions can be counted on the (course_id, order_index) index
+            "WITH unplaced AS (SELECT l.id, (SELECT coalesce(max(m.order_index), 0) FROM lessons m WHERE m.course_id = l.course_id) "
+                    + "  + " + LessonOrderingService.GAP + " * row_number() OVER (PARTITION BY l.course_id ORDER BY l.id) AS idx "
+                    + "  FROM lessons l WHERE l.order_index IS NULL) "
+                    + "UPDATE lessons l SET order_index = u.idx FROM unplaced u WHERE u.id = l.id"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseMigrations databaseMigrations;
+
+    public DatabaseSchemaInitializer(JdbcTemplate jdbcTemplate, DatabaseMigrations databaseMigrations) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.databaseMigrations = databaseMigrations;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        // Tables Hibernate has just created on a fresh database get their sequence defaults here
+        databaseMigrations.migrateSequences();
+        for (String statement : STATEMENTS) {
+            jdbcTemplate.execute(statement);
+        }
+    }
+}
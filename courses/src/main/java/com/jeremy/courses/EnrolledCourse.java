@@ -0,0 +1,24 @@
+package com.jeremy.courses;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * A course the caller is enrolled in with its lesson and completion counts,
+ * built straight from a JPQL constructor query.
+ */
+public record EnrolledCourse(Long enrollmentId, CourseSummary course, LocalDateTime enrolledAt, Instant lastActivityAt,
+                             long totalLessons, long completedLessons) {
+
+    // Flat form used by the constructor query
+    public EnrolledCourse(Long enrollmentId, Long courseId, String title, String description, boolean restrictedToAllowList,
+                          Long authorId, String authorName, LocalDateTime enrolledAt, Instant lastActivityAt,
+                          int totalLessons, int completedLessons) {
+        this(enrollmentId, new CourseSummary(courseId, title, description, restrictedToAllowList, authorId, authorName),
+                enrolledAt, lastActivityAt, totalLessons, completedLessons);
+    }
+
+    public double progress() {
+        return totalLessons > 0 ? (completedLessons * 100.0 / totalLessons) : 0.0;
+    }
+}
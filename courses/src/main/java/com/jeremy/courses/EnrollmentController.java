@@ -1,9 +1,11 @@
 package com.jeremy.courses;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -12,36 +14,39 @@ import java.util.stream.Collectors;
 @RequestMapping("/enrollments")
 public class EnrollmentController {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final CourseEnrollmentRepository enrollmentRepository;
-    private final LessonProgressRepository progressRepository;
     private final CourseRepository courseRepository;
     private final LessonRepository lessonRepository;
-    private final UserRepository userRepository;
+    private final CourseAllowlistService courseAllowlistService;
+    private final ProgressCounters progressCounters;
+    private final CompletionBuffer completionBuffer;
+    private final EnrollmentService enrollmentService;
 
     public EnrollmentController(
             CourseEnrollmentRepository enrollmentRepository,
-            LessonProgressRepository progressRepository,
             CourseRepository courseRepository,
             LessonRepository lessonRepository,
-            UserRepository userRepository) {
+            CourseAllowlistService courseAllowlistService,
+            ProgressCounters progressCounters,
+            CompletionBuffer completionBuffer,
+            EnrollmentService enrollmentService) {
         this.enrollmentRepository = enrollmentRepository;
-        this.progressRepository = progressRepository;
         this.courseRepository = courseRepository;
         this.lessonRepository = lessonRepository;
-        this.userRepository = userRepository;
+        this.courseAllowlistService = courseAllowlistService;
+        this.progressCounters = progressCounters;
+        this.completionBuffer = completionBuffer;
+        this.enrollmentService = enrollmentService;
     }
 
     // Enroll in a course
     @PostMapping("/courses/{courseId}")
-    public ResponseEntity<?> enrollInCourse(@PathVariable Long courseId, Authentication authentication) {
-        if (authentication == null || !authentication.isAuthenticated()) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
-        }
-
-        String email = authentication.getName();
-        User user = userRepository.findByEmail(email);
+    public ResponseEntity<?> enrollInCourse(@PathVariable Long courseId, AuthenticatedUser user) {
         if (user == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "User not found"));
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
         }
 
         Course course = courseRepository.findById(courseId).orElse(null);
@@ -49,68 +54,102 @@ public class EnrollmentController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Course not found"));
         }
 
-        boolean isAdmin = "ADMIN".equals(user.getRole());
-        boolean isAuthor = course.getAuthor() != null && course.getAuthor().getId().equals(user.getId());
-        if (course.isRestrictedToAllowList() && !isAdmin && !isAuthor && !course.isEmailAllowed(user.getEmail())) {
+        boolean isAdmin = user.isAdmin();
+        boolean isAuthor = course.getAuthor() != null && course.getAuthor().getId().equals(user.id());
+        if (course.isRestrictedToAllowList() && !isAdmin && !isAuthor && !courseAllowlistService.isAllowed(course, user.email())) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body(Map.of("error", "Enrollment restricted: you are not on this course's allowlist"));
         }
 
-        // Check if already enrolled
-        if (enrollmentRepository.existsByUserIdAndCourseId(user.getId(), courseId)) {
+        // Insert-or-nothing in one statement: an existing enrollment (or a concurrent double-submit) is a 409
+        EnrollmentService.Enrollment enrollment = enrollmentService.enroll(user.id(), courseId).orElse(null);
+        if (enrollment == null) {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "Already enrolled in this course"));
         }
 
-        CourseEnrollment enrollment = new CourseEnrollment(user, course);
-        enrollmentRepository.save(enrollment);
+        return ResponseEntity.status(HttpStatus.CREATED).body(Map.of(
+                "id", enrollment.id(),
+                "courseId", courseId,
+                "enrolledAt", enrollment.enrolledAt().toString()
+        ));
+    }
+
+    // Admin only: enroll many users at once. Body: {"userIds": [1, 2, ...]}; unknown ids are skipped.
+    @PostMapping("/courses/{courseId}/bulk")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> enrollUsers(@PathVariable Long courseId, @RequestBody Map<String, List<Long>> body) {
+        List<Long> userIds = body.get("userIds");
+        if (userIds == null || userIds.isEmpty() || userIds.contains(null)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Provide a non-empty 'userIds' list"));
+        }
+
+        if (!courseRepository.existsById(courseId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Course not found"));
+        }
 
-        return ResponseEntity.status(HttpStatus.CREATED).body(enrollment);
+        EnrollmentService.BulkResult result = enrollmentService.enrollAll(courseId, userIds);
+        return ResponseEntity.ok(Map.of(
+                "requested", result.requested(),
+                "enrolled", result.enrolled(),
+                "alreadyEnrolled", result.alreadyEnrolled(),
+                "unknownUsers", result.unknownUsers()
+        ));
     }
 
-    // Get user's enrolled courses
+    // Get user's enrolled courses with progress, oldest enrollment first, one query per page.
+    // Keyset paginated: ?after=<cursor>&limit=<n>, next cursor in X-Next-Cursor. The cursor is opaque
+    // to clients: "<enrolledAt>_<enrollment id>" of the last row.
     @GetMapping("/my-courses")
-    public ResponseEntity<?> getMyCourses(Authentication authentication) {
-        if (authentication == null || !authentication.isAuthenticated()) {
+    public ResponseEntity<?> getMyCourses(@RequestParam(required = false) String after,
+                                          @RequestParam(required = false) Integer limit,
+                                          AuthenticatedUser user) {
+        if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
         }
 
-        String email = authentication.getName();
-        User user = userRepository.findByEmail(email);
-        if (user == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "User not found"));
+        int pageSize = (limit == null || limit < 1) ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        List<EnrolledCourse> enrollments;
+        if (after == null || after.isEmpty()) {
+            enrollments = enrollmentRepository.findEnrolledCourses(user.id(), Limit.of(pageSize + 1));
+        } else {
+            int separator = after.lastIndexOf('_');
+            LocalDateTime afterEnrolledAt;
+            long afterId;
+            try {
+                afterEnrolledAt = LocalDateTime.parse(after.substring(0, Math.max(separator, 0)));
+                afterId = Long.parseLong(after.substring(separator + 1));
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Invalid cursor"));
+            }
+            enrollments = enrollmentRepository.findEnrolledCoursesAfter(user.id(), afterEnrolledAt, afterId, Limit.of(pageSize + 1));
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (enrollments.size() > pageSize) {
+            enrollments = enrollments.subList(0, pageSize);
+            EnrolledCourse last = enrollments.get(pageSize - 1);
+            response.header("X-Next-Cursor", last.enrolledAt() + "_" + last.enrollmentId());
         }
 
-        List<CourseEnrollment> enrollments = enrollmentRepository.findByUserId(user.getId());
         List<Map<String, Object>> coursesWithProgress = enrollments.stream().map(enrollment -> {
-            Course course = enrollment.getCourse();
-            List<Lesson> lessons = lessonRepository.findByCourseId(course.getId());
-            long totalLessons = lessons.size();
-            long completedLessons = progressRepository.countByUserIdAndLessonCourseIdAndCompleted(
-                    user.getId(), course.getId(), true);
-
-            return Map.of(
-                    "course", course,
-                    "enrolledAt", enrollment.getEnrolledAt().toString(),
-                    "totalLessons", totalLessons,
-                    "completedLessons", completedLessons,
-                    "progress", totalLessons > 0 ? (completedLessons * 100.0 / totalLessons) : 0.0
-            );
+            Map<String, Object> map = new java.util.HashMap<>();
+            map.put("course", enrollment.course());
+            map.put("enrolledAt", enrollment.enrolledAt().toString());
+            map.put("totalLessons", enrollment.totalLessons());
+            map.put("completedLessons", enrollment.completedLessons());
+            map.put("progress", enrollment.progress());
+            map.put("lastActivityAt", enrollment.lastActivityAt() != null ? enrollment.lastActivityAt().toString() : null);
+            return map;
         }).collect(Collectors.toList());
 
-        return ResponseEntity.ok(coursesWithProgress);
+        return response.body(coursesWithProgress);
     }
 
     // Unenroll from a course
     @DeleteMapping("/courses/{courseId}")
-    public ResponseEntity<?> unenrollFromCourse(@PathVariable Long courseId, Authentication authentication) {
-        if (authentication == null || !authentication.isAuthenticated()) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
-        }
-
-        String email = authentication.getName();
-        User user = userRepository.findByEmail(email);
+    public ResponseEntity<?> unenrollFromCourse(@PathVariable Long courseId, AuthenticatedUser user) {
         if (user == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "User not found"));
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
         }
 
         Course course = courseRepository.findById(courseId).orElse(null);
@@ -118,86 +157,91 @@ public class EnrollmentController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Course not found"));
         }
 
-        var enrollmentOpt = enrollmentRepository.findByUserIdAndCourseId(user.getId(), courseId);
-        if (enrollmentOpt.isEmpty()) {
+        // Deletes the enrollment and the user's lesson progress for this course
+        if (!progressCounters.unenroll(user.id(), courseId)) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "You are not enrolled in this course"));
         }
 
-        // Delete lesson progress for this user+course
-        List<LessonProgress> progressEntries = progressRepository.findByUserIdAndLessonCourseId(user.getId(), courseId);
-        progressRepository.deleteAll(progressEntries);
-
-        // Delete enrollment
-        enrollmentRepository.delete(enrollmentOpt.get());
-
         return ResponseEntity.ok(Map.of("message", "Unenrolled from course"));
     }
 
-    // Mark lesson as completed
+    // Mark lesson as completed: answered with 202 once queued, written within the flush interval
     @PostMapping("/lessons/{lessonId}/complete")
-    public ResponseEntity<?> completeLesson(@PathVariable Long lessonId, Authentication authentication) {
-        if (authentication == null || !authentication.isAuthenticated()) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
-        }
-
-        String email = authentication.getName();
-        User user = userRepository.findByEmail(email);
+    public ResponseEntity<?> completeLesson(@PathVariable Long lessonId, AuthenticatedUser user) {
         if (user == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "User not found"));
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
         }
 
-        Lesson lesson = lessonRepository.findById(lessonId).orElse(null);
-        if (lesson == null) {
+        // One query for both checks; the write itself is batched by CompletionBuffer
+        LessonEnrollment target = lessonRepository.findEnrollment(lessonId, user.id()).orElse(null);
+        if (target == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Lesson not found"));
         }
-
-        // Check if user is enrolled in the course
-        if (!enrollmentRepository.existsByUserIdAndCourseId(user.getId(), lesson.getCourse().getId())) {
+        if (!target.enrolled()) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body(Map.of("error", "You must be enrolled in the course to complete lessons"));
         }
 
-        LessonProgress progress = progressRepository.findByUserIdAndLessonId(user.getId(), lessonId)
-                .orElse(new LessonProgress(user, lesson));
-        progress.setCompleted(true);
-        progressRepository.save(progress);
+        LocalDateTime completedAt = completionBuffer.submit(user.id(), lessonId, target.courseId());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                "lessonId", lessonId,
+                "completed", true,
+                "completedAt", completedAt.toString()
+        ));
+    }
+
+    // Progress totals for one course, read from the enrollment's counters (a single row)
+    @GetMapping("/courses/{courseId}/progress/summary")
+    public ResponseEntity<?> getCourseProgressSummary(@PathVariable Long courseId, AuthenticatedUser user) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
+        }
+
+        EnrolledCourse enrollment = enrollmentRepository.findEnrolledCourse(user.id(), courseId).orElse(null);
+        if (enrollment == null) {
+            if (!courseRepository.existsById(courseId)) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Course not found"));
+            }
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "You are not enrolled in this course"));
+        }
 
-        return ResponseEntity.ok(progress);
+        Map<String, Object> body = new java.util.HashMap<>();
+        body.put("totalLessons", enrollment.totalLessons());
+        body.put("completedLessons", enrollment.completedLessons());
+        body.put("progress", enrollment.progress());
+        body.put("lastActivityAt", enrollment.lastActivityAt() != null ? enrollment.lastActivityAt().toString() : null);
+        return ResponseEntity.ok(body);
     }
 
     // Get progress for a specific course
     @GetMapping("/courses/{courseId}/progress")
-    public ResponseEntity<?> getCourseProgress(@PathVariable Long courseId, Authentication authentication) {
-        if (authentication == null || !authentication.isAuthenticated()) {
+    public ResponseEntity<?> getCourseProgress(@PathVariable Long courseId, AuthenticatedUser user) {
+        if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
         }
 
-        String email = authentication.getName();
-        User user = userRepository.findByEmail(email);
-        if (user == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "User not found"));
+        if (!courseRepository.existsById(courseId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Course not found"));
         }
 
         // Check if enrolled
-        if (!enrollmentRepository.existsByUserIdAndCourseId(user.getId(), courseId)) {
+        if (!enrollmentRepository.existsByUserIdAndCourseId(user.id(), courseId)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body(Map.of("error", "You are not enrolled in this course"));
         }
 
-        List<Lesson> lessons = lessonRepository.findByCourseId(courseId);
-        List<Map<String, Object>> lessonProgress = lessons.stream().map(lesson -> {
-            LessonProgress progress = progressRepository.findByUserIdAndLessonId(user.getId(), lesson.getId())
-                    .orElse(new LessonProgress(user, lesson));
-
+        List<LessonProgressEntry> lessons = lessonRepository.findProgressByCourseId(courseId, user.id());
+        List<Map<String, Object>> lessonProgress = lessons.stream().map(entry -> {
             Map<String, Object> map = new java.util.HashMap<>();
-            map.put("lesson", lesson);
-            map.put("completed", progress.isCompleted());
+            map.put("lesson", entry.lesson());
+            map.put("completed", entry.completed());
             // Allow completedAt to be null in the JSON payload without causing Map.of NPE
-            map.put("completedAt", progress.getCompletedAt() != null ? progress.getCompletedAt().toString() : null);
+            map.put("completedAt", entry.completedAt() != null ? entry.completedAt().toString() : null);
             return map;
         }).collect(Collectors.toList());
 
-        long completedCount = lessonProgress.stream().filter(p -> (Boolean) p.get("completed")).count();
+        long completedCount = lessons.stream().filter(LessonProgressEntry::completed).count();
         double progressPercent = lessons.size() > 0 ? (completedCount * 100.0 / lessons.size()) : 0.0;
 
         return ResponseEntity.ok(Map.of(
@@ -0,0 +1,81 @@
+package com.jeremy.courses;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Enrollment writes as single INSERT ... ON CONFLICT statements against the (user_id, course_id)
+ * unique constraint, so concurrent double-submits can't both get past a separate existence check.
+ */
+@Service
+public class EnrollmentService {
+
+    public record Enrollment(Long id, LocalDateTime enrolledAt) {
+    }
+
+    public record BulkResult(int requested, int enrolled, int alreadyEnrolled, int unknownUsers) {
+    }
+
+    private static final String ENROLL_ALL_SQL = """
+            WITH input AS (
+                SELECT DISTINCT id FROM unnest(?::bigint[]) AS t(id)
+            ), known AS (
+                SELECT u.id FROM users u JOIN input i ON i.id = u.id
+            ), inserted AS (
+                INSERT INTO course_enrollments (user_id, course_id, enrolled_at)
+                SELECT k.id, c.id, localtimestamp FROM known k JOIN courses c ON c.id = ? AND NOT c.deleted
+                ON CONFLICT (user_id, course_id) DO NOTHING
+                RETURNING user_id
+            )
+            SELECT (SELECT count(*) FROM known) AS known, (SELECT count(*) FROM inserted) AS inserted
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    public EnrollmentService(JdbcTemplate jdbcTemplate,
+                             @Value("${courses.enrollments.bulk.batch-size:1000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    // Empty when the user was already enrolled (or the course has just been flagged for deletion: its
+    // rows are being removed, so nothing new may reference it)
+    public Optional<Enrollment> enroll(Long userId, Long courseId) {
+        List<Enrollment> created = jdbcTemplate.query(
+                "INSERT INTO course_enrollments (user_id, course_id, enrolled_at) "
+                        + "SELECT ?, id, localtimestamp FROM courses WHERE id = ? AND NOT deleted "
+                        + "ON CONFLICT (user_id, course_id) DO NOTHING RETURNING id, enrolled_at",
+                (rs, row) -> new Enrollment(rs.getLong("id"), rs.getTimestamp("enrolled_at").toLocalDateTime()),
+                userId, courseId);
+        return created.stream().findFirst();
+    }
+
+    // Enrolls many users, one multi-row INSERT per chunk of batch-size ids, each committed on its own.
+    // Ids that match no user are skipped, and nothing is inserted once the course is flagged for deletion.
+    public BulkResult enrollAll(Long courseId, List<Long> userIds) {
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(userIds));
+        int known = 0;
+        int enrolled = 0;
+        for (int from = 0; from < distinct.size(); from += batchSize) {
+            Object[] chunk = distinct.subList(from, Math.min(from + batchSize, distinct.size())).toArray();
+            int[] counts = jdbcTemplate.query(ENROLL_ALL_SQL, ps -> {
+                ps.setArray(1, ps.getConnection().createArrayOf("bigint", chunk));
+                ps.setLong(2, courseId);
+            }, rs -> {
+                rs.next();
+                return new int[]{rs.getInt("known"), rs.getInt("inserted")};
+            });
+            known += counts[0];
+            enrolled += counts[1];
+        }
+        return new BulkResult(distinct.size(), enrolled, known - enrolled, distinct.size() - known);
+    }
+}
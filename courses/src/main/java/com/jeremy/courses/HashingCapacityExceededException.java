@@ -0,0 +1,11 @@
+package com.jeremy.courses;
+
+/**
+ * Thrown when the password hashing pool is saturated; surfaces as 503 with Retry-After.
+ */
+public class HashingCapacityExceededException extends RuntimeException {
+
+    public HashingCapacityExceededException() {
+        super("Too many concurrent password operations, please retry shortly");
+    }
+}
@@ -1,13 +1,21 @@
 package com.jeremy.courses;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
 
 @Entity
-@Table(name = "lessons")
+@Table(name = "lessons", indexes = {
+        @Index(name = "idx_lessons_course_id", columnList = "course_id")
+})
 public class Lesson {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence rather than IDENTITY so bulk imports can be inserted in JDBC batches (see DatabaseMigrations)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "lessons_seq")
+    @SequenceGenerator(name = "lessons_seq", sequenceName = "lessons_seq", allocationSize = 50)
     private Long id;
 
     private String title;
@@ -15,12 +23,36 @@ public class Lesson {
     @Column(columnDefinition = "TEXT") // Allows long text for lesson notes without PostgreSQL Large Object API
     private String content;
 
+    // Large bodies may be stored gzipped in lessons.content_gzip instead, with content left null. That column is
+    // not mapped, so loading a lesson never reads it; LessonContentStore reads and writes it.
+    // Uncompressed size in bytes of a gzipped body
+    @JsonIgnore
+    @Column(name = "content_size")
+    private Integer contentSize;
+
+    // Text of a gzipped body, once LessonContentStore has inflated or written it for this instance
+    @Transient
+    private String compressedContent;
+
     private String videoUrl; // Link to the video file (e.g., YouTube or S3)
 
     private String pdfUrl; // Link to the PDF resource
 
+    // Sparse sort key within the course (see LessonOrderingService); clients only ever see the dense position
+    @JsonIgnore
     @Column(name = "order_index")
-    private Integer orderIndex; // Position of the lesson within its course
+    private Integer orderIndex;
+
+    // Optimistic lock and ETag source: bumped on every update (set-based SQL updates bump it explicitly)
+    @JsonIgnore
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint not null default 0")
+    private Long version;
+
+    @JsonIgnore
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false, columnDefinition = "timestamp(6) with time zone not null default now()")
+    private Instant updatedAt;
 
     // --- RELATIONSHIP ---
 
@@ -56,12 +88,30 @@ public class Lesson {
         this.title = title;
     }
 
+    // Null for a gzipped body that hasn't been inflated (see LessonContentStore.withContent)
     public String getContent() {
-        return content;
+        return content != null ? content : compressedContent;
     }
 
     public void setContent(String content) {
         this.content = content;
+        this.contentSize = null;
+        this.compressedContent = null;
+    }
+
+    // The gzipped bytes themselves are written by LessonContentStore once the row exists
+    public void setCompressedContent(String content, int contentSize) {
+        this.content = null;
+        this.contentSize = contentSize;
+        this.compressedContent = content;
+    }
+
+    void setInflatedContent(String content) {
+        this.compressedContent = content;
+    }
+
+    public boolean hasCompressedContent() {
+        return content == null && contentSize != null;
     }
 
     public String getVideoUrl() {
@@ -95,4 +145,12 @@ public class Lesson {
     public void setOrderIndex(Integer orderIndex) {
         this.orderIndex = orderIndex;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
 }
@@ -0,0 +1,124 @@
+package com.jeremy.courses;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Tracks a background pass that gzips existing lesson bodies (see LessonCompressionService).
+ * Status moves PENDING -> RUNNING -> COMPLETED (or FAILED); lastLessonId is the keyset cursor a
+ * resumed job continues from, and updatedAt doubles as a heartbeat like CourseDeletionJob's.
+ */
+@Entity
+@Table(name = "lesson_compression_jobs", indexes = {
+    @Index(name = "idx_lesson_compression_jobs_status", columnList = "status")
+})
+public class LessonCompressionJob {
+
+    public static final String PENDING = "PENDING";
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "requested_by")
+    private Long requestedBy;
+
+    @Column(nullable = false, length = 16)
+    private String status = PENDING;
+
+    @Column(name = "last_lesson_id", nullable = false)
+    private long lastLessonId = 0;
+
+    @Column(name = "lessons_compressed", nullable = false)
+    private long lessonsCompressed = 0;
+
+    @Column(name = "content_bytes_before", nullable = false)
+    private long contentBytesBefore = 0;
+
+    @Column(name = "content_bytes_after", nullable = false)
+    private long contentBytesAfter = 0;
+
+    // pg_total_relation_size('lessons') when the job first started and when it finished
+    @Column(name = "table_bytes_before")
+    private Long tableBytesBefore;
+
+    @Column(name = "table_bytes_after")
+    private Long tableBytesAfter;
+
+    @Column(length = 1000)
+    private String error;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+
+    public LessonCompressionJob() {
+    }
+
+    public LessonCompressionJob(Long requestedBy) {
+        this.requestedBy = requestedBy;
+        this.createdAt = Instant.now();
+        this.updatedAt = this.createdAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getRequestedBy() {
+        return requestedBy;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public long getLastLessonId() {
+        return lastLessonId;
+    }
+
+    public long getLessonsCompressed() {
+        return lessonsCompressed;
+    }
+
+    public long getContentBytesBefore() {
+        return contentBytesBefore;
+    }
+
+    public long getContentBytesAfter() {
+        return contentBytesAfter;
+    }
+
+    public Long getTableBytesBefore() {
+        return tableBytesBefore;
+    }
+
+    public Long getTableBytesAfter() {
+        return tableBytesAfter;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+}
@@ -0,0 +1,43 @@
+package com.jeremy.courses;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface LessonCompressionJobRepository extends JpaRepository<LessonCompressionJob, Long> {
+
+    // Pending jobs, plus running ones whose worker stopped sending heartbeats
+    @Query("select j.id from LessonCompressionJob j where j.status = 'PENDING' "
+            + "or (j.status = 'RUNNING' and j.updatedAt < :staleBefore) order by j.id")
+    List<Long> findRunnableIds(Instant staleBefore);
+
+    // A job that hasn't finished yet, so a second request joins it instead of starting another pass
+    Optional<LessonCompressionJob> findFirstByStatusInOrderByIdAsc(List<String> statuses);
+
+    // Atomic claim so only one worker (on any instance) runs a given job
+    @Transactional
+    @Modifying
+    @Query("update LessonCompressionJob j set j.status = 'RUNNING', j.updatedAt = :now, "
+            + "j.tableBytesBefore = coalesce(j.tableBytesBefore, :tableBytes) "
+            + "where j.id = :id and (j.status = 'PENDING' or (j.status = 'RUNNING' and j.updatedAt < :staleBefore))")
+    int claim(Long id, Instant now, Instant staleBefore, long tableBytes);
+
+    @Transactional
+    @Modifying
+    @Query("update LessonCompressionJob j set j.lastLessonId = :lastLessonId, "
+            + "j.lessonsCompressed = j.lessonsCompressed + :lessons, "
+            + "j.contentBytesBefore = j.contentBytesBefore + :bytesBefore, "
+            + "j.contentBytesAfter = j.contentBytesAfter + :bytesAfter, j.updatedAt = :now where j.id = :id")
+    int recordProgress(Long id, long lastLessonId, long lessons, long bytesBefore, long bytesAfter, Instant now);
+
+    @Transactional
+    @Modifying
+    @Query("update LessonCompressionJob j set j.status = :status, j.error = :error, j.tableBytesAfter = :tableBytes, "
+            + "j.updatedAt = :now, j.finishedAt = :now where j.id = :id")
+    int finish(Long id, String status, String error, Long tableBytes, Instant now);
+}
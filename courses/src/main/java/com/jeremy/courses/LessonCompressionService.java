@@ -0,0 +1,113 @@
+package com.jeremy.courses;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compresses existing lesson bodies in the background (POST /lessons/content-compression).
+ *
+ * The request only records a LessonCompressionJob; a worker then runs LessonContentStore.compressBatch
+ * batch by batch, each batch its own short statement, saving the keyset cursor and running totals after
+ * every one. A job interrupted by a restart resumes from its cursor, like CourseDeletionService's jobs.
+ */
+@Service
+public class LessonCompressionService {
+
+    private static final List<String> UNFINISHED = List.of(LessonCompressionJob.PENDING, LessonCompressionJob.RUNNING);
+
+    private final LessonContentStore lessonContentStore;
+    private final LessonCompressionJobRepository jobRepository;
+    private final Duration staleAfter;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lesson-compression");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Jobs already queued on this instance
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+
+    public LessonCompressionService(LessonContentStore lessonContentStore,
+                                    LessonCompressionJobRepository jobRepository,
+                                    @Value("${courses.lessons.compression.stale-after-seconds:600}") long staleAfterSeconds) {
+        this.lessonContentStore = lessonContentStore;
+        this.jobRepository = jobRepository;
+        this.staleAfter = Duration.ofSeconds(staleAfterSeconds);
+    }
+
+    // Starts a pass, or returns the one still running
+    public LessonCompressionJob requestCompression(Long requestedBy) {
+        LessonCompressionJob running = jobRepository.findFirstByStatusInOrderByIdAsc(UNFINISHED).orElse(null);
+        if (running != null) {
+            return running;
+        }
+        LessonCompressionJob job = jobRepository.save(new LessonCompressionJob(requestedBy));
+        enqueue(job.getId());
+        return job;
+    }
+
+    // Picks up jobs left behind by restarts or by other instances that went away
+    @Scheduled(fixedDelayString = "${courses.lessons.compression.poll-interval-ms:30000}",
+            initialDelayString = "${courses.lessons.compression.poll-interval-ms:30000}")
+    public void resumeRunnableJobs() {
+        for (Long jobId : jobRepository.findRunnableIds(Instant.now().minus(staleAfter))) {
+            enqueue(jobId);
+        }
+    }
+
+    private void enqueue(Long jobId) {
+        if (queued.add(jobId)) {
+            worker.execute(() -> {
+                try {
+                    run(jobId);
+                } finally {
+                    queued.remove(jobId);
+                }
+            });
+        }
+    }
+
+    private void run(Long jobId) {
+        Instant now = Instant.now();
+        if (jobRepository.claim(jobId, now, now.minus(staleAfter), lessonContentStore.tableSize()) == 0) {
+            return;
+        }
+        LessonCompressionJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return;
+        }
+
+        try {
+            LessonContentStore.CompressedBatch batch;
+            long after = job.getLastLessonId();
+            while ((batch = lessonContentStore.compressBatch(after)) != null) {
+                after = batch.lastLessonId();
+                // Doubles as the heartbeat that keeps other instances from re-claiming the job
+                jobRepository.recordProgress(jobId, after, batch.lessonsCompressed(),
+                        batch.contentBytesBefore(), batch.contentBytesAfter(), Instant.now());
+            }
+            jobRepository.finish(jobId, LessonCompressionJob.COMPLETED, null, lessonContentStore.tableSize(), Instant.now());
+            System.out.println("Lesson content compression job " + jobId + " completed");
+        } catch (RuntimeException e) {
+            System.err.println("Lesson content compression job " + jobId + " failed: " + e.getMessage());
+            String message = String.valueOf(e.getMessage());
+            jobRepository.finish(jobId, LessonCompressionJob.FAILED,
+                    message.length() > 1000 ? message.substring(0, 1000) : message, null, Instant.now());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+}
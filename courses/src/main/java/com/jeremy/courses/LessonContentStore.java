@@ -0,0 +1,267 @@
+package com.jeremy.courses;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Optional compressed storage for lesson bodies.
+ *
+ * When enabled, bodies larger than the threshold are gzipped into lessons.content_gzip and content is
+ * left NULL, so the row (and the buffer cache) only holds the compressed bytes. They are inflated only
+ * where the full body is actually returned, and GET /lessons/{id}/content can send them to gzip-capable
+ * clients as is. Full-text search keeps working through lessons.compressed_search, which the generated
+ * search_vector column folds in (see DatabaseSchemaInitializer).
+ *
+ * content_gzip is not mapped on Lesson, so loading lessons never drags the compressed bytes along;
+ * this class reads and writes it directly. Existing rows are compressed by LessonCompressionService.
+ *
+ * Reading compressed rows always works; the flag only controls whether new writes are compressed.
+ */
+@Service
+public class LessonContentStore {
+
+    public record StoredContent(String text, byte[] gzip) {
+    }
+
+    public record CompressedBatch(long lastLessonId, int lessonsCompressed, long contentBytesBefore, long contentBytesAfter) {
+    }
+
+    private final LessonRepository lessonRepository;
+    private final LessonOrderingService lessonOrderingService;
+    private final ProgressCounters progressCounters;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int thresholdBytes;
+    private final int batchSize;
+
+    public LessonContentStore(LessonRepository lessonRepository,
+                              LessonOrderingService lessonOrderingService,
+                              ProgressCounters progressCounters,
+                              JdbcTemplate jdbcTemplate,
+                              @Value("${courses.lessons.compression.enabled:false}") boolean enabled,
+                              @Value("${courses.lessons.compression.threshold-bytes:8192}") int thresholdBytes,
+                              @Value("${courses.lessons.compression.batch-size:200}") int batchSize) {
+        this.lessonRepository = lessonRepository;
+        this.lessonOrderingService = lessonOrderingService;
+        this.progressCounters = progressCounters;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.thresholdBytes = thresholdBytes;
+        this.batchSize = batchSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Appends a new lesson, storing its body compressed when it qualifies
+    @Transactional
+    public Lesson create(Lesson lesson) {
+        return createAll(lesson.getCourse().getId(), List.of(lesson)).get(0);
+    }
+
+    // Same for several lessons of one course, appended in list order in one transaction
+    @Transactional
+    public List<Lesson> createAll(Long courseId, List<Lesson> lessons) {
+        List<byte[]> gzips = new ArrayList<>();
+        for (Lesson lesson : lessons) {
+            gzips.add(apply(lesson, lesson.getContent()));
+        }
+        List<Lesson> saved = lessonOrderingService.appendAll(courseId, lessons);
+        progressCounters.lessonsAdded(courseId, saved.size());
+
+        List<Object[]> compressed = new ArrayList<>();
+        for (int i = 0; i < saved.size(); i++) {
+            if (gzips.get(i) != null) {
+                compressed.add(new Object[]{gzips.get(i), lessons.get(i).getContent(), saved.get(i).getId()});
+            }
+        }
+        if (!compressed.isEmpty()) {
+            // The inserts are still queued in the session; write them before pointing updates at the rows
+            lessonRepository.flush();
+            jdbcTemplate.batchUpdate("UPDATE lessons SET content_gzip = ?, "
+                    + "compressed_search = setweight(to_tsvector('english', ?), 'B') WHERE id = ?", compressed);
+        }
+        return saved;
+    }
+
+    // Saves an edited lesson with a new body
+    @Transactional
+    public Lesson update(Lesson lesson, String content) {
+        boolean wasCompressed = lesson.hasCompressedContent();
+        byte[] gzip = apply(lesson, content);
+        Lesson saved = lessonRepository.saveAndFlush(lesson);
+        if (gzip != null || wasCompressed) {
+            storeCompressed(saved.getId(), gzip, gzip != null ? content : null);
+        }
+        return saved;
+    }
+
+    // Inflates the body of a gzipped lesson loaded as an entity, for the endpoints that return it whole
+    public Lesson withContent(Lesson lesson) {
+        if (lesson.hasCompressedContent() && lesson.getContent() == null) {
+            StoredContent stored = load(lesson.getId());
+            if (stored != null) {
+                lesson.setInflatedContent(read(stored.text(), stored.gzip()));
+            }
+        }
+        return lesson;
+    }
+
+    // Fills in the gzipped bodies of a detail list, one extra query and only when the list has any
+    public List<LessonDetail> withContent(List<LessonDetail> details) {
+        List<Long> ids = new ArrayList<>();
+        for (LessonDetail detail : details) {
+            if (detail.content() == null) {
+                ids.add(detail.id());
+            }
+        }
+        if (ids.isEmpty()) {
+            return details;
+        }
+        Map<Long, byte[]> gzips = new HashMap<>();
+        jdbcTemplate.query("SELECT id, content_gzip FROM lessons WHERE id = ANY(?) AND content_gzip IS NOT NULL",
+                rs -> {
+                    gzips.put(rs.getLong(1), rs.getBytes(2));
+                },
+                (Object) ids.toArray(new Long[0]));
+        if (gzips.isEmpty()) {
+            return details;
+        }
+        List<LessonDetail> filled = new ArrayList<>(details.size());
+        for (LessonDetail detail : details) {
+            byte[] gzip = gzips.get(detail.id());
+            filled.add(gzip != null ? detail.withContent(read(null, gzip)) : detail);
+        }
+        return filled;
+    }
+
+    // Null when the lesson doesn't exist
+    public StoredContent load(Long lessonId) {
+        List<StoredContent> rows = jdbcTemplate.query("SELECT content, content_gzip FROM lessons WHERE id = ?",
+                (rs, i) -> new StoredContent(rs.getString(1), rs.getBytes(2)), lessonId);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Compresses the next batch of plain bodies over the threshold after the given lesson id; null once
+     * there are none left. Each row is rewritten only if it hasn't been edited since it was read, and its
+     * version is bumped so an edit of a copy loaded before the rewrite fails instead of leaving the old
+     * gzipped body (and its search words) behind.
+     */
+    public CompressedBatch compressBatch(long after) {
+        List<Object[]> rows = jdbcTemplate.query(
+                "SELECT id, version, content FROM lessons "
+                        + "WHERE id > ? AND content_gzip IS NULL AND octet_length(content) > ? ORDER BY id LIMIT ?",
+                (rs, i) -> new Object[]{rs.getLong(1), rs.getLong(2), rs.getString(3)},
+                after, thresholdBytes, batchSize);
+        if (rows.isEmpty()) {
+            return null;
+        }
+
+        List<Object[]> updates = new ArrayList<>();
+        List<long[]> sizes = new ArrayList<>();
+        for (Object[] row : rows) {
+            String content = (String) row[2];
+            byte[] raw = content.getBytes(StandardCharsets.UTF_8);
+            byte[] gzip = compress(raw);
+            if (gzip.length < raw.length) {
+                updates.add(new Object[]{gzip, raw.length, content, row[0], row[1]});
+                sizes.add(new long[]{raw.length, gzip.length});
+            }
+        }
+        int[] counts = jdbcTemplate.batchUpdate(
+                "UPDATE lessons SET content = NULL, content_gzip = ?, content_size = ?, "
+                        + "compressed_search = setweight(to_tsvector('english', ?), 'B'), "
+                        + "version = version + 1, updated_at = now() "
+                        + "WHERE id = ? AND version = ? AND content_gzip IS NULL",
+                updates);
+        int lessons = 0;
+        long bytesBefore = 0;
+        long bytesAfter = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                lessons++;
+                bytesBefore += sizes.get(i)[0];
+                bytesAfter += sizes.get(i)[1];
+            }
+        }
+        return new CompressedBatch((Long) rows.get(rows.size() - 1)[0], lessons, bytesBefore, bytesAfter);
+    }
+
+    // Sets the body on the entity, compressed if enabled, over the threshold and actually smaller.
+    // Returns the gzipped bytes to store once the row exists, or null when the body is stored plain.
+    private byte[] apply(Lesson lesson, String content) {
+        if (enabled && content != null) {
+            byte[] raw = content.getBytes(StandardCharsets.UTF_8);
+            if (raw.length > thresholdBytes) {
+                byte[] gzip = compress(raw);
+                if (gzip.length < raw.length) {
+                    lesson.setCompressedContent(content, raw.length);
+                    return gzip;
+                }
+            }
+        }
+        lesson.setContent(content);
+        return null;
+    }
+
+    // Null gzip clears a previously compressed body (and its search words) after an edit stored it plain
+    private void storeCompressed(Long lessonId, byte[] gzip, String content) {
+        jdbcTemplate.update("UPDATE lessons SET content_gzip = ?, compressed_search = "
+                        + "CASE WHEN ?::text IS NULL THEN NULL ELSE setweight(to_tsvector('english', ?::text), 'B') END "
+                        + "WHERE id = ?",
+                gzip, content, content, lessonId);
+    }
+
+    // pg_total_relation_size; the space of old row versions is only reused after (auto)vacuum
+    public long tableSize() {
+        Long size = jdbcTemplate.queryForObject("SELECT pg_total_relation_size('lessons')", Long.class);
+        return size != null ? size : 0;
+    }
+
+    static byte[] compress(byte[] raw) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(raw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static InputStream inflating(byte[] gzip) {
+        try {
+            return new GZIPInputStream(new ByteArrayInputStream(gzip));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Text of a row read with both columns: content when stored plain, otherwise the inflated gzip
+    static String read(String content, byte[] gzip) {
+        if (content != null || gzip == null) {
+            return content;
+        }
+        try (InputStream in = inflating(gzip)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
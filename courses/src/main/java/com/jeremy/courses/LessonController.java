@@ -1,86 +1,116 @@
 package com.jeremy.courses;
 
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 @RestController
 @RequestMapping("/lessons")
 public class LessonController {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final LessonRepository lessonRepository;
     private final CourseRepository courseRepository;
-    private final UserRepository userRepository;
     private final CourseEnrollmentRepository enrollmentRepository;
-    private final LessonProgressRepository lessonProgressRepository;
+    private final ProgressCounters progressCounters;
     private final S3Service s3Service;
+    private final CourseAllowlistService courseAllowlistService;
+    private final LessonOrderingService lessonOrderingService;
+    private final ContentVersions contentVersions;
+    private final LessonContentStore lessonContentStore;
+    private final LessonImportService lessonImportService;
+    private final LessonCompressionService lessonCompressionService;
+    private final LessonCompressionJobRepository lessonCompressionJobRepository;
 
     public LessonController(
             LessonRepository lessonRepository,
             CourseRepository courseRepository,
-            UserRepository userRepository,
             CourseEnrollmentRepository enrollmentRepository,
-            LessonProgressRepository lessonProgressRepository,
-            S3Service s3Service
+            ProgressCounters progressCounters,
+            S3Service s3Service,
+            CourseAllowlistService courseAllowlistService,
+            LessonOrderingService lessonOrderingService,
+            ContentVersions contentVersions,
+            LessonContentStore lessonContentStore,
+            LessonImportService lessonImportService,
+            LessonCompressionService lessonCompressionService,
+            LessonCompressionJobRepository lessonCompressionJobRepository
     ) {
         this.lessonRepository = lessonRepository;
         this.courseRepository = courseRepository;
-        this.userRepository = userRepository;
         this.enrollmentRepository = enrollmentRepository;
-        this.lessonProgressRepository = lessonProgressRepository;
+        this.progressCounters = progressCounters;
         this.s3Service = s3Service;
+        this.courseAllowlistService = courseAllowlistService;
+        this.lessonOrderingService = lessonOrderingService;
+        this.contentVersions = contentVersions;
+        this.lessonContentStore = lessonContentStore;
+        this.lessonImportService = lessonImportService;
+        this.lessonCompressionService = lessonCompressionService;
+        this.lessonCompressionJobRepository = lessonCompressionJobRepository;
     }
 
-    private User getCurrentUser(Authentication authentication) {
-        if (authentication == null || !authentication.isAuthenticated()) {
-            return null;
+    // Validators are checked before anything is loaded; on a match Spring answers 304 and null is returned
+    private static ResponseEntity.BodyBuilder validated(ContentVersions.Stamp stamp) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .eTag(stamp.etag());
+        if (stamp.lastModified() != null) {
+            response.lastModified(stamp.lastModified());
         }
-        String email = authentication.getName();
-        return userRepository.findByEmail(email);
+        return response;
     }
 
-    private boolean isAdmin(User user) {
-        return user != null && "ADMIN".equals(user.getRole());
+    private boolean isAdmin(AuthenticatedUser user) {
+        return user != null && user.isAdmin();
     }
 
-    private boolean isCourseAuthor(User user, Course course) {
-        return user != null && course.getAuthor() != null && course.getAuthor().getId().equals(user.getId());
+    private boolean isCourseAuthor(AuthenticatedUser user, Course course) {
+        return user != null && course.getAuthor() != null && course.getAuthor().getId().equals(user.id());
     }
 
-    private boolean isEnrolledInCourse(User user, Long courseId) {
+    private boolean isEnrolledInCourse(AuthenticatedUser user, Long courseId) {
         if (user == null || courseId == null) {
             return false;
         }
-        return enrollmentRepository.existsByUserIdAndCourseId(user.getId(), courseId);
+        return enrollmentRepository.existsByUserIdAndCourseId(user.id(), courseId);
     }
 
-    private boolean isOnCourseAllowList(User user, Course course) {
+    private boolean isOnCourseAllowList(AuthenticatedUser user, Course course) {
         if (user == null || course == null) return false;
         if (!course.isRestrictedToAllowList()) return true;
-        return course.isEmailAllowed(user.getEmail());
+        return courseAllowlistService.isAllowed(course, user.email());
     }
 
-    private boolean canViewFullLessonContent(User user, Course course) {
+    private boolean canViewFullLessonContent(AuthenticatedUser user, Course course) {
         if (user == null || course == null) {
             return false;
         }
@@ -94,45 +124,55 @@ public class LessonController {
         return isEnrolledInCourse(user, course.getId());
     }
 
+    // Keyset paginated: GET /lessons?after=<last id>&limit=<n>&courseId=<optional>, ordered by lesson id.
+    // The X-Next-Cursor response header holds the next 'after' value when more lessons exist.
+    // Lessons are listed without their bodies unless ?include=content is given.
     @GetMapping
-    public ResponseEntity<?> getAllLessons(Authentication authentication) {
-        User user = getCurrentUser(authentication);
+    public ResponseEntity<?> getAllLessons(@RequestParam(required = false) Long after,
+                                           @RequestParam(required = false) Integer limit,
+                                           @RequestParam(required = false) Long courseId,
+                                           @RequestParam(value = "include", required = false) String include,
+                                           AuthenticatedUser user) {
         if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "Not authenticated"));
         }
 
-        // Admins can see all lessons; others only lessons for courses they authored or are enrolled in
-        if (isAdmin(user)) {
-            return ResponseEntity.ok(lessonRepository.findAll());
-        }
+        int pageSize = (limit == null || limit < 1) ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        long cursor = after != null ? after : 0L;
 
-        List<CourseEnrollment> enrollments = enrollmentRepository.findByUserId(user.getId());
-        Set<Long> accessibleCourseIds = new HashSet<>();
-        for (CourseEnrollment e : enrollments) {
-            accessibleCourseIds.add(e.getCourse().getId());
-        }
-        for (Course c : courseRepository.findAll()) {
-            if (c.getAuthor() != null && c.getAuthor().getId().equals(user.getId())) {
-                accessibleCourseIds.add(c.getId());
+        // Admins can see all lessons; others only lessons for courses they authored or are enrolled in
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if ("content".equals(include)) {
+            List<LessonDetail> page = isAdmin(user)
+                    ? lessonRepository.findDetailPage(courseId, cursor, Limit.of(pageSize + 1))
+                    : lessonRepository.findAccessibleDetailPage(user.id(), courseId, cursor, Limit.of(pageSize + 1));
+            if (page.size() > pageSize) {
+                page = page.subList(0, pageSize);
+                response.header("X-Next-Cursor", String.valueOf(page.get(pageSize - 1).id()));
             }
+            return response.body(lessonContentStore.withContent(page));
         }
 
-        List<Lesson> allLessons = lessonRepository.findAll();
-        List<Lesson> filtered = new ArrayList<>();
-        for (Lesson lesson : allLessons) {
-            if (lesson.getCourse() != null && accessibleCourseIds.contains(lesson.getCourse().getId())) {
-                filtered.add(lesson);
-            }
+        List<LessonListItem> page = isAdmin(user)
+                ? lessonRepository.findPage(courseId, cursor, Limit.of(pageSize + 1))
+                : lessonRepository.findAccessiblePage(user.id(), courseId, cursor, Limit.of(pageSize + 1));
+        if (page.size() > pageSize) {
+            page = page.subList(0, pageSize);
+            response.header("X-Next-Cursor", String.valueOf(page.get(pageSize - 1).id()));
         }
-
-        return ResponseEntity.ok(filtered);
+        return response.body(page);
     }
 
     // Usage: GET http://localhost:8080/lessons/course/1
+    // Summaries by default; lesson bodies only with ?include=content (or one at a time via GET /lessons/{id})
     @GetMapping("/course/{courseId}")
-    public ResponseEntity<?> getLessonsByCourse(@PathVariable Long courseId, Authentication authentication) {
-        User user = getCurrentUser(authentication);
+    public ResponseEntity<?> getLessonsByCourse(
+            @PathVariable Long courseId,
+            @RequestParam(value = "include", required = false) String include,
+            AuthenticatedUser user,
+            WebRequest request
+    ) {
         if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "Not authenticated"));
@@ -144,24 +184,34 @@ public class LessonController {
                     .body(Map.of("error", "Course not found"));
         }
 
-        List<Lesson> orderedLessons = lessonRepository.findByCourseIdOrderByOrderIndexAscIdAsc(courseId);
-
-        // If user cannot view full content, return only basic information (id, title, orderIndex)
+        // If user cannot view full content, return only basic information (id, title, position)
+        boolean includeContent = "content".equals(include);
         if (!canViewFullLessonContent(user, course)) {
-            List<Map<String, Object>> summaries = new ArrayList<>();
-            int index = 0;
-            for (Lesson lesson : orderedLessons) {
-                summaries.add(Map.of(
-                        "id", lesson.getId(),
-                        "title", lesson.getTitle(),
-                        "orderIndex", lesson.getOrderIndex(),
-                        "position", ++index
-                ));
+            if (includeContent) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(Map.of("error", "You must be enrolled in the course (or be the author/admin) to view lesson content"));
             }
-            return ResponseEntity.ok(summaries);
+            return conditionalLessonList(courseId, "outline", request);
         }
+        return conditionalLessonList(courseId, includeContent ? "content" : "summary", request);
+    }
 
-        return ResponseEntity.ok(orderedLessons);
+    private ResponseEntity<?> conditionalLessonList(Long courseId, String representation, WebRequest request) {
+        ContentVersions.Stamp stamp = contentVersions.lessons(courseId, representation);
+        if (stamp == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "Course not found"));
+        }
+        if (request.checkNotModified(stamp.etag(), stamp.lastModifiedMillis())) {
+            return null;
+        }
+
+        ResponseEntity.BodyBuilder response = validated(stamp);
+        return switch (representation) {
+            case "outline" -> response.body(lessonRepository.findOutlinesByCourseId(courseId));
+            case "content" -> response.body(lessonContentStore.withContent(lessonRepository.findDetailsByCourseId(courseId)));
+            default -> response.body(lessonRepository.findSummariesByCourseId(courseId));
+        };
     }
 
     // Create a lesson with optional YouTube URL and/or PDF upload.
@@ -179,10 +229,8 @@ public class LessonController {
             @RequestParam("courseId") Long courseId,
             @RequestParam(value = "videoUrl", required = false) String videoUrl,
             @RequestPart(value = "pdf", required = false) MultipartFile pdfFile,
-            Authentication authentication
+            AuthenticatedUser user
     ) throws IOException {
-
-        User user = getCurrentUser(authentication);
         if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "Not authenticated"));
@@ -203,37 +251,180 @@ public class LessonController {
             pdfUrl = s3Service.uploadPdf(pdfFile);
         }
 
-        Lesson lesson = new Lesson(title, content, videoUrl, pdfUrl, course);
+        // Appended at the next position in this course
+        Lesson savedLesson = lessonContentStore.create(new Lesson(title, content, videoUrl, pdfUrl, course));
+        return ResponseEntity.ok(savedLesson);
+    }
 
-        // Set orderIndex to the next position in this course
-        Integer nextIndex = lessonRepository.findByCourseId(courseId).size() + 1;
-        lesson.setOrderIndex(nextIndex);
+    // Bulk import: NDJSON (one {"title", "content", "videoUrl", "pdfUrl"} object per line) or a JSON array of them.
+    // Lessons are appended in order, committed in chunks; invalid entries are skipped and reported.
+    @PostMapping(value = "/course/{courseId}/import",
+            consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    @PreAuthorize("hasRole('CREATOR') or hasRole('ADMIN')")
+    public ResponseEntity<?> importLessons(@PathVariable Long courseId, InputStream body, AuthenticatedUser user) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Not authenticated"));
+        }
 
-        Lesson savedLesson = lessonRepository.save(lesson);
-        return ResponseEntity.ok(savedLesson);
+        Course course = courseRepository.findById(courseId).orElse(null);
+        if (course == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "Course not found"));
+        }
+
+        if (!isAdmin(user) && !isCourseAuthor(user, course)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Only course authors or admins can create lessons for this course"));
+        }
+
+        LessonImportService.ImportResult result = lessonImportService.importFrom(course, body);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("received", result.received());
+        response.put("imported", result.imported());
+        response.put("rejected", result.rejected());
+        response.put("problems", result.problems());
+        if (result.error() != null) {
+            response.put("error", result.error());
+            return ResponseEntity.badRequest().body(response);
+        }
+        return ResponseEntity.ok(response);
     }
 
+    // Access is checked from the version row and the course; the lesson itself is only loaded on a cache miss
     @GetMapping("/{lessonId}")
-    public ResponseEntity<?> getLessonById(@PathVariable Long lessonId, Authentication authentication) {
-        User user = getCurrentUser(authentication);
+    public ResponseEntity<?> getLessonById(@PathVariable Long lessonId, AuthenticatedUser user, WebRequest request) {
         if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "Not authenticated"));
         }
 
+        ContentVersions.LessonStamp stamp = contentVersions.lesson(lessonId);
+        Course course = stamp != null ? courseRepository.findById(stamp.courseId()).orElse(null) : null;
+        if (course == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "Lesson not found"));
+        }
+
+        if (!canViewFullLessonContent(user, course)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "You must be enrolled in the course (or be the author/admin) to view this lesson"));
+        }
+
+        if (request.checkNotModified(stamp.stamp().etag(), stamp.stamp().lastModifiedMillis())) {
+            return null;
+        }
+
         Lesson lesson = lessonRepository.findById(lessonId).orElse(null);
-        if (lesson == null) {
+        if (lesson == null || lesson.getCourse() == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "Lesson not found"));
+        }
+        return validated(ContentVersions.lessonStamp(lesson)).body(lessonContentStore.withContent(lesson));
+    }
+
+    // Just the lesson body as text/plain. Gzipped bodies go out as stored to clients that accept gzip,
+    // and are inflated while streaming for everyone else.
+    @GetMapping("/{lessonId}/content")
+    public ResponseEntity<?> getLessonContent(
+            @PathVariable Long lessonId,
+            @RequestHeader(value = "Accept-Encoding", required = false) String acceptEncoding,
+            AuthenticatedUser user,
+            WebRequest request
+    ) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Not authenticated"));
+        }
+
+        ContentVersions.LessonStamp stamp = contentVersions.lesson(lessonId);
+        Course course = stamp != null ? courseRepository.findById(stamp.courseId()).orElse(null) : null;
+        if (course == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(Map.of("error", "Lesson not found"));
         }
 
-        Course course = lesson.getCourse();
         if (!canViewFullLessonContent(user, course)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body(Map.of("error", "You must be enrolled in the course (or be the author/admin) to view this lesson"));
         }
 
-        return ResponseEntity.ok(lesson);
+        boolean gzipAccepted = acceptsGzip(acceptEncoding);
+        ContentVersions.Stamp validators = stamp.stamp().variant(gzipAccepted ? "content-gzip" : "content");
+        if (request.checkNotModified(validators.etag(), validators.lastModifiedMillis())) {
+            return null;
+        }
+
+        LessonContentStore.StoredContent stored = lessonContentStore.load(lessonId);
+        if (stored == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "Lesson not found"));
+        }
+
+        ResponseEntity.BodyBuilder response = validated(validators)
+                .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        // A plain body wins, as in LessonContentStore.read
+        if (stored.text() != null || stored.gzip() == null) {
+            String text = stored.text() != null ? stored.text() : "";
+            return response.body(new ByteArrayResource(text.getBytes(StandardCharsets.UTF_8)));
+        }
+        if (gzipAccepted) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(new ByteArrayResource(stored.gzip()));
+        }
+        return response.body(new InputStreamResource(LessonContentStore.inflating(stored.gzip())));
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length < 2 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    // Compresses existing lesson bodies over the configured threshold in a background job whose
+    // progress and space saved are at GET /lessons/content-compression/{jobId}
+    @PostMapping("/content-compression")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> compressExistingContent(AuthenticatedUser user) {
+        if (!lessonContentStore.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", "Lesson content compression is disabled (courses.lessons.compression.enabled)"));
+        }
+        LessonCompressionJob job = lessonCompressionService.requestCompression(user != null ? user.id() : null);
+        return ResponseEntity.accepted().body(Map.of(
+                "message", "Lesson content compression started",
+                "jobId", job.getId(),
+                "status", job.getStatus()
+        ));
+    }
+
+    @GetMapping("/content-compression/{jobId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getCompressionJob(@PathVariable Long jobId) {
+        LessonCompressionJob job = lessonCompressionJobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Compression job not found"));
+        }
+
+        Map<String, Object> body = new java.util.HashMap<>();
+        body.put("jobId", job.getId());
+        body.put("status", job.getStatus());
+        body.put("lessonsCompressed", job.getLessonsCompressed());
+        body.put("contentBytesBefore", job.getContentBytesBefore());
+        body.put("contentBytesAfter", job.getContentBytesAfter());
+        body.put("tableBytesBefore", job.getTableBytesBefore());
+        body.put("tableBytesAfter", job.getTableBytesAfter());
+        body.put("createdAt", job.getCreatedAt().toString());
+        body.put("finishedAt", job.getFinishedAt() != null ? job.getFinishedAt().toString() : null);
+        body.put("error", job.getError());
+        return ResponseEntity.ok(body);
     }
 
     @PutMapping(value = "/{lessonId}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -245,16 +436,16 @@ public class LessonController {
             @RequestParam(value = "videoUrl", required = false) String videoUrl,
             @RequestParam(value = "clearPdf", required = false, defaultValue = "false") boolean clearPdf,
             @RequestPart(value = "pdf", required = false) MultipartFile pdfFile,
-            Authentication authentication
+            @RequestHeader(value = "If-Match", required = false) String ifMatch,
+            AuthenticatedUser user
     ) throws IOException {
-        User user = getCurrentUser(authentication);
         if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "Not authenticated"));
         }
 
         Lesson lesson = lessonRepository.findById(lessonId).orElse(null);
-        if (lesson == null) {
+        if (lesson == null || lesson.getCourse() == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(Map.of("error", "Lesson not found"));
         }
@@ -265,9 +456,14 @@ public class LessonController {
                     .body(Map.of("error", "Only course authors or admins can update lessons for this course"));
         }
 
+        // Edits based on an older copy are rejected up front; a race after this point fails the version check on save (409)
+        if (ifMatch != null && !ifMatch.equals("*") && !ifMatch.equals(ContentVersions.lessonStamp(lesson).etag())) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                    .body(Map.of("error", "Lesson was changed by someone else; reload it and try again"));
+        }
+
         // Update basic fields
         lesson.setTitle(title);
-        lesson.setContent(content);
         if (videoUrl != null) {
             lesson.setVideoUrl(videoUrl);
         }
@@ -280,21 +476,21 @@ public class LessonController {
             lesson.setPdfUrl(null);
         }
 
-        Lesson saved = lessonRepository.save(lesson);
-        return ResponseEntity.ok(saved);
+        // The body is stored compressed when it qualifies
+        Lesson saved = lessonContentStore.update(lesson, content);
+        return ResponseEntity.ok().eTag(ContentVersions.lessonStamp(saved).etag()).body(saved);
     }
 
     @DeleteMapping("/{lessonId}")
     @PreAuthorize("hasRole('CREATOR') or hasRole('ADMIN')")
-    public ResponseEntity<?> deleteLesson(@PathVariable Long lessonId, Authentication authentication) {
-        User user = getCurrentUser(authentication);
+    public ResponseEntity<?> deleteLesson(@PathVariable Long lessonId, AuthenticatedUser user) {
         if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "Not authenticated"));
         }
 
         Lesson lesson = lessonRepository.findById(lessonId).orElse(null);
-        if (lesson == null) {
+        if (lesson == null || lesson.getCourse() == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(Map.of("error", "Lesson not found"));
         }
@@ -305,21 +501,66 @@ public class LessonController {
                     .body(Map.of("error", "Only course authors or admins can delete lessons for this course"));
         }
 
-        // Clean up lesson progress records
-        lessonProgressRepository.deleteByLessonId(lessonId);
-
-        lessonRepository.delete(lesson);
+        // Removes the lesson with its progress records and updates the course's and enrollments' counters
+        if (!progressCounters.deleteLesson(lessonId, course.getId())) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "Lesson not found"));
+        }
         return ResponseEntity.noContent().build();
     }
 
+    // Move one lesson directly before or after another lesson of the same course.
+    // Body: {"before": lessonId} or {"after": lessonId}. Only the moved lesson is written.
+    @PostMapping("/{lessonId}/move")
+    @PreAuthorize("hasRole('CREATOR') or hasRole('ADMIN')")
+    public ResponseEntity<?> moveLesson(
+            @PathVariable Long lessonId,
+            @RequestBody Map<String, Long> body,
+            AuthenticatedUser user
+    ) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Not authenticated"));
+        }
+
+        Long before = body.get("before");
+        Long after = body.get("after");
+        if ((before == null) == (after == null)) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Provide exactly one of 'before' or 'after'"));
+        }
+        Long anchorId = after != null ? after : before;
+
+        Lesson lesson = lessonRepository.findById(lessonId).orElse(null);
+        if (lesson == null || lesson.getCourse() == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "Lesson not found"));
+        }
+
+        Course course = lesson.getCourse();
+        if (!isAdmin(user) && !isCourseAuthor(user, course)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Only course authors or admins can reorder lessons for this course"));
+        }
+
+        if (anchorId.equals(lessonId) || !lessonRepository.existsByIdAndCourseId(anchorId, course.getId())) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "The target lesson must be another lesson of the same course"));
+        }
+
+        // The sparse order_index stays internal; clients get the lesson's rank in the course
+        int orderIndex = lessonOrderingService.move(course.getId(), lessonId, anchorId, after != null);
+        long position = lessonRepository.findPosition(course.getId(), orderIndex);
+        return ResponseEntity.ok(Map.of("id", lessonId, "courseId", course.getId(), "position", position));
+    }
+
     @PostMapping("/course/{courseId}/reorder")
     @PreAuthorize("hasRole('CREATOR') or hasRole('ADMIN')")
     public ResponseEntity<?> reorderLessons(
             @PathVariable Long courseId,
             @RequestBody List<Long> orderedLessonIds,
-            Authentication authentication
+            AuthenticatedUser user
     ) {
-        User user = getCurrentUser(authentication);
         if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "Not authenticated"));
@@ -336,29 +577,9 @@ public class LessonController {
                     .body(Map.of("error", "Only course authors or admins can reorder lessons for this course"));
         }
 
-        List<Lesson> lessons = lessonRepository.findByCourseIdOrderByOrderIndexAscIdAsc(courseId);
-        Map<Long, Lesson> byId = new java.util.HashMap<>();
-        for (Lesson lesson : lessons) {
-            byId.put(lesson.getId(), lesson);
-        }
-
-        int index = 1;
-        for (Long id : orderedLessonIds) {
-            Lesson lesson = byId.get(id);
-            if (lesson != null) {
-                lesson.setOrderIndex(index++);
-            }
-        }
-
-        // Any lessons not in the submitted list will be appended after
-        for (Lesson lesson : lessons) {
-            if (lesson.getOrderIndex() == null || lesson.getOrderIndex() < 1) {
-                lesson.setOrderIndex(index++);
-            }
-        }
-
-        lessonRepository.saveAll(lessons);
+        // Any lessons not in the submitted list keep their relative order after the listed ones
+        lessonOrderingService.reorder(courseId, orderedLessonIds);
 
-        return ResponseEntity.ok(lessonRepository.findByCourseIdOrderByOrderIndexAscIdAsc(courseId));
+        return ResponseEntity.ok(lessonRepository.findSummariesByCourseId(courseId));
     }
 }
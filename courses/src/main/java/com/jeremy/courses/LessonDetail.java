@@ -0,0 +1,16 @@
+package com.jeremy.courses;
+
+/**
+ * Read model for lessons the caller may open: lesson columns plus the course id,
+ * instead of the whole Course (and its author) repeated in every element.
+ * position is the 1-based place of the lesson in its course's order. Gzipped bodies come back
+ * null from the queries and are filled in by LessonContentStore.withContent.
+ */
+public record LessonDetail(Long id, Long courseId, String title, String content, String videoUrl,
+                           String pdfUrl, Long position) {
+
+    // Same lesson with its gzipped body filled in (see LessonContentStore.withContent)
+    LessonDetail withContent(String content) {
+        return new LessonDetail(id, courseId, title, content, videoUrl, pdfUrl, position);
+    }
+}
@@ -0,0 +1,8 @@
+package com.jeremy.courses;
+
+/**
+ * The course a lesson belongs to and whether a given user is enrolled in it,
+ * enough to accept a lesson completion without loading the lesson.
+ */
+public record LessonEnrollment(Long courseId, boolean enrolled) {
+}
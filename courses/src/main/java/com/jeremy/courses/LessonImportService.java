@@ -0,0 +1,108 @@
+package com.jeremy.courses;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.MappingIterator;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bulk lesson import for one course from NDJSON (one lesson object per line) or a JSON array.
+ *
+ * The body is parsed as a stream and written chunk by chunk: each chunk is one transaction
+ * (LessonContentStore.createAll) whose inserts go out in JDBC batches, appended after the course's
+ * existing lessons in input order. A malformed document stops the import; chunks already written stay.
+ */
+@Service
+public class LessonImportService {
+
+    public record ImportedLesson(String title, String content, String videoUrl, String pdfUrl) {
+    }
+
+    // error is set when the document itself could not be read
+    public record ImportResult(int received, int imported, int rejected, List<String> problems, String error) {
+    }
+
+    private static final int MAX_REPORTED_PROBLEMS = 20;
+    private static final int MAX_COLUMN_LENGTH = 255;
+
+    private final LessonContentStore lessonContentStore;
+    private final JsonMapper jsonMapper;
+    private final int chunkSize;
+
+    public LessonImportService(LessonContentStore lessonContentStore,
+                               JsonMapper jsonMapper,
+                               @Value("${courses.lessons.import.chunk-size:100}") int chunkSize) {
+        this.lessonContentStore = lessonContentStore;
+        this.jsonMapper = jsonMapper;
+        this.chunkSize = chunkSize;
+    }
+
+    public ImportResult importFrom(Course course, InputStream body) {
+        int received = 0;
+        int imported = 0;
+        List<String> problems = new ArrayList<>();
+        int rejected = 0;
+        String error = null;
+
+        List<Lesson> chunk = new ArrayList<>(chunkSize);
+        try (MappingIterator<ImportedLesson> lessons = jsonMapper.readerFor(ImportedLesson.class).readValues(body)) {
+            while (lessons.hasNextValue()) {
+                ImportedLesson lesson = lessons.nextValue();
+                received++;
+                String problem = validate(lesson);
+                if (problem != null) {
+                    rejected++;
+                    if (problems.size() < MAX_REPORTED_PROBLEMS) {
+                        problems.add("lesson " + received + ": " + problem);
+                    }
+                    continue;
+                }
+                chunk.add(new Lesson(lesson.title().trim(), lesson.content(), blankToNull(lesson.videoUrl()),
+                        blankToNull(lesson.pdfUrl()), course));
+                if (chunk.size() >= chunkSize) {
+                    imported += write(course, chunk);
+                }
+            }
+        } catch (JacksonException e) {
+            error = "Malformed lesson document after " + received + " lessons: " + e.getOriginalMessage();
+        }
+        if (!chunk.isEmpty()) {
+            imported += write(course, chunk);
+        }
+        return new ImportResult(received, imported, rejected, problems, error);
+    }
+
+    private int write(Course course, List<Lesson> chunk) {
+        int written = lessonContentStore.createAll(course.getId(), chunk).size();
+        chunk.clear();
+        return written;
+    }
+
+    private static String validate(ImportedLesson lesson) {
+        if (lesson == null) {
+            return "not a lesson object";
+        }
+        if (lesson.title() == null || lesson.title().isBlank()) {
+            return "title is required";
+        }
+        if (lesson.title().trim().length() > MAX_COLUMN_LENGTH) {
+            return "title is longer than " + MAX_COLUMN_LENGTH + " characters";
+        }
+        if (lesson.videoUrl() != null && lesson.videoUrl().length() > MAX_COLUMN_LENGTH) {
+            return "videoUrl is longer than " + MAX_COLUMN_LENGTH + " characters";
+        }
+        if (lesson.pdfUrl() != null && lesson.pdfUrl().length() > MAX_COLUMN_LENGTH) {
+            return "pdfUrl is longer than " + MAX_COLUMN_LENGTH + " characters";
+        }
+        return null;
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+}
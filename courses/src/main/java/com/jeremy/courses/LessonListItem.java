@@ -0,0 +1,9 @@
+package com.jeremy.courses;
+
+/**
+ * Read model for GET /lessons pages, which span courses: the lesson's course, links and stored body size,
+ * but not the body itself. position is the 1-based place of the lesson in its course's order.
+ */
+public record LessonListItem(Long id, Long courseId, String title, String videoUrl, String pdfUrl,
+                             Long position, Integer contentLength) {
+}
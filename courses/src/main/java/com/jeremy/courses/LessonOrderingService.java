@@ -0,0 +1,178 @@
+package com.jeremy.courses;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Assigns lesson positions within a course.
+ *
+ * Positions are sparse: lessons are spaced GAP apart, so moving one lesson between two neighbours is a
+ * single UPDATE to the midpoint of their positions. When the gaps around a move get small the course is
+ * renumbered in the background; only a move into an exhausted gap renumbers inline. The client-facing
+ * position is always the rank (see LessonRepository.findOutlinesByCourseId), never the raw order_index.
+ *
+ * Writers of a course's ordering are serialized with a transaction-scoped advisory lock, so two
+ * concurrent appends or moves can never pick the same position. The (course_id, order_index) unique
+ * constraint (DatabaseSchemaInitializer) backs this up.
+ */
+@Service
+public class LessonOrderingService {
+
+    static final int GAP = 1024;
+
+    // A move that leaves less room than this on either side schedules a background renumber
+    private static final int MIN_GAP = 16;
+
+    // First key of the two-int advisory lock form, so these locks can't clash with other advisory lock users
+    private static final int LOCK_NAMESPACE = 0x4C45;
+
+    // Listed lessons first in the given order, then the rest in their current order, spaced GAP apart.
+    // Only rows whose position actually changes are written.
+    private static final String RENUMBER_SQL =
+            "UPDATE lessons l SET order_index = r.rank * " + GAP + ", version = l.version + 1, updated_at = now() "
+                    + "FROM (SELECT ls.id, row_number() OVER (ORDER BY o.ord NULLS LAST, ls.order_index NULLS LAST, ls.id) AS rank "
+                    + "      FROM lessons ls "
+                    + "      LEFT JOIN (SELECT id, min(ord) AS ord FROM unnest(?::bigint[]) WITH ORDINALITY AS u(id, ord) GROUP BY id) o "
+                    + "        ON o.id = ls.id "
+                    + "      WHERE ls.course_id = ?) r "
+                    + "WHERE l.id = r.id AND l.order_index IS DISTINCT FROM r.rank * " + GAP;
+
+    private final LessonRepository lessonRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final ExecutorService rebalancer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lesson-rebalance");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Courses already queued for a background renumber
+    private final Set<Long> pendingRebalance = ConcurrentHashMap.newKeySet();
+
+    public LessonOrderingService(LessonRepository lessonRepository,
+                                 JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager) {
+        this.lessonRepository = lessonRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Saves the lesson at the end of its course
+    @Transactional
+    public Lesson append(Lesson lesson) {
+        return appendAll(lesson.getCourse().getId(), List.of(lesson)).get(0);
+    }
+
+    // Saves the lessons at the end of the course, in list order; new entities are inserted in JDBC batches
+    @Transactional
+    public List<Lesson> appendAll(Long courseId, List<Lesson> lessons) {
+        lockCourse(courseId);
+        int max = lessonRepository.findMaxOrderIndex(courseId);
+        if (max > Integer.MAX_VALUE - (long) GAP * lessons.size()) {
+            renumber(courseId, List.of());
+            max = lessonRepository.findMaxOrderIndex(courseId);
+        }
+        for (Lesson lesson : lessons) {
+            max += GAP;
+            lesson.setOrderIndex(max);
+        }
+        return lessonRepository.saveAll(lessons);
+    }
+
+    // Places the lesson directly before or after the anchor lesson (same course) and returns its new order index
+    @Transactional
+    public int move(Long courseId, Long lessonId, Long anchorId, boolean after) {
+        lockCourse(courseId);
+        int[] bounds = bounds(courseId, lessonId, anchorId, after);
+        if (bounds == null) {
+            // No room left between the neighbours (or unpositioned lessons): renumber, then there is a full GAP
+            renumber(courseId, List.of());
+            bounds = bounds(courseId, lessonId, anchorId, after);
+        }
+
+        int lower = bounds[0];
+        int upper = bounds[1];
+        int orderIndex = lower + (upper - lower) / 2;
+        lessonRepository.updateOrderIndex(lessonId, orderIndex);
+
+        if (Math.min(orderIndex - lower, upper - orderIndex) < MIN_GAP) {
+            scheduleRebalance(courseId);
+        }
+        return orderIndex;
+    }
+
+    // Listed lessons take the first positions in the given order; the rest keep their relative order after them
+    @Transactional
+    public void reorder(Long courseId, List<Long> orderedLessonIds) {
+        lockCourse(courseId);
+        renumber(courseId, orderedLessonIds);
+    }
+
+    // Exclusive bounds for the moved lesson, or null when they leave no free position in between
+    private int[] bounds(Long courseId, Long lessonId, Long anchorId, boolean after) {
+        Integer anchor = lessonRepository.findOrderIndex(courseId, anchorId);
+        if (anchor == null) {
+            return null;
+        }
+        long lower;
+        long upper;
+        if (after) {
+            Integer next = lessonRepository.findNextOrderIndex(courseId, lessonId, anchor);
+            lower = anchor;
+            upper = next != null ? next : (long) anchor + GAP;
+        } else {
+            Integer previous = lessonRepository.findPreviousOrderIndex(courseId, lessonId, anchor);
+            lower = previous != null ? previous : 0;
+            upper = anchor;
+        }
+        if (upper - lower < 2 || upper > Integer.MAX_VALUE) {
+            return null;
+        }
+        return new int[]{(int) lower, (int) upper};
+    }
+
+    private void scheduleRebalance(Long courseId) {
+        if (pendingRebalance.add(courseId)) {
+            rebalancer.execute(() -> {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        lockCourse(courseId);
+                        renumber(courseId, List.of());
+                    });
+                } catch (RuntimeException e) {
+                    System.err.println("Rebalancing lessons of course " + courseId + " failed: " + e.getMessage());
+                } finally {
+                    pendingRebalance.remove(courseId);
+                }
+            });
+        }
+    }
+
+    // Caller holds the course lock. The unique constraint is deferred, so positions may collide until commit.
+    private int renumber(Long courseId, List<Long> orderedLessonIds) {
+        return jdbcTemplate.update(RENUMBER_SQL, ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("bigint", orderedLessonIds.toArray()));
+            ps.setLong(2, courseId);
+        });
+    }
+
+    // Ids beyond the int range fold into the second key; two courses sharing a lock only serialize more
+    private void lockCourse(Long courseId) {
+        jdbcTemplate.query("SELECT pg_advisory_xact_lock(?, ?)", rs -> null, LOCK_NAMESPACE, Long.hashCode(courseId));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebalancer.shutdownNow();
+    }
+}
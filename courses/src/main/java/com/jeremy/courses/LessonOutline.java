@@ -0,0 +1,8 @@
+package com.jeremy.courses;
+
+/**
+ * Read model for lessons listed without their content (callers not enrolled, progress views).
+ * position is the 1-based place of the lesson in its course's order.
+ */
+public record LessonOutline(Long id, String title, Long position) {
+}
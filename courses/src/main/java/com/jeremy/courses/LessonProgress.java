@@ -6,11 +6,14 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "lesson_progress", uniqueConstraints = {
     @UniqueConstraint(columnNames = {"user_id", "lesson_id"})
+}, indexes = {
+    @Index(name = "idx_lesson_progress_lesson_id", columnList = "lesson_id")
 })
 public class LessonProgress {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "lesson_progress_seq")
+    @SequenceGenerator(name = "lesson_progress_seq", sequenceName = "lesson_progress_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
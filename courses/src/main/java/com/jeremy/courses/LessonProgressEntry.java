@@ -0,0 +1,17 @@
+package com.jeremy.courses;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row of a student's course progress: the lesson summary plus whether (and when) they completed it.
+ * completedAt is null for lessons not completed yet.
+ */
+public record LessonProgressEntry(LessonSummary lesson, boolean completed, LocalDateTime completedAt) {
+
+    // Flat form used by the constructor query
+    public LessonProgressEntry(Long id, String title, Long position, boolean hasPdf,
+                               boolean hasVideo, Integer contentLength, boolean completed, LocalDateTime completedAt) {
+        this(new LessonSummary(id, title, position, hasPdf, hasVideo, contentLength),
+                completed, completed ? completedAt : null);
+    }
+}
@@ -1,6 +1,9 @@
 package com.jeremy.courses;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,6 +14,13 @@ public interface LessonProgressRepository extends JpaRepository<LessonProgress,
     long countByUserIdAndLessonCourseIdAndCompleted(Long userId, Long courseId, boolean completed);
 
     void deleteByLessonId(Long lessonId);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM lesson_progress WHERE id IN "
+            + "(SELECT lp.id FROM lesson_progress lp JOIN lessons l ON l.id = lp.lesson_id "
+            + "WHERE l.course_id = :courseId LIMIT :batchSize)", nativeQuery = true)
+    int deleteBatchByCourseId(Long courseId, int batchSize);
 }
 
 
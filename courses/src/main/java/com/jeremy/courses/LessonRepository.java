@@ -1,13 +1,132 @@
 package com.jeremy.courses;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
+import java.util.Optional;
 
 public interface LessonRepository extends JpaRepository<Lesson, Long> {
-    // Spring Data JPA magic: It looks for a "course" field in Lesson,
-    // and an "id" field in Course.
-    List<Lesson> findByCourseId(Long courseId);
-
     // Ordered by explicit order index first, then by id as a stable fallback
     List<Lesson> findByCourseIdOrderByOrderIndexAscIdAsc(Long courseId);
+
+    long countByCourseId(Long courseId);
+
+    // Served from the (course_id, order_index) unique index
+    @Query("select coalesce(max(l.orderIndex), 0) from Lesson l where l.course.id = :courseId")
+    int findMaxOrderIndex(Long courseId);
+
+    boolean existsByIdAndCourseId(Long id, Long courseId);
+
+    // Empty when the lesson is gone or its course is being deleted
+    @Query("select new com.jeremy.courses.LessonEnrollment(c.id, "
+            + "case when exists (select e.id from CourseEnrollment e where e.user.id = :userId and e.course.id = c.id) "
+            + "then true else false end) "
+            + "from Lesson l join l.course c where l.id = :lessonId")
+    Optional<LessonEnrollment> findEnrollment(Long lessonId, Long userId);
+
+    // --- Neighbour lookups for LessonOrderingService.move, all served from the (course_id, order_index) index ---
+
+    @Query(value = "SELECT order_index FROM lessons WHERE course_id = :courseId AND id = :id", nativeQuery = true)
+    Integer findOrderIndex(Long courseId, Long id);
+
+    @Query(value = "SELECT min(order_index) FROM lessons "
+            + "WHERE course_id = :courseId AND order_index > :orderIndex AND id <> :excludedId", nativeQuery = true)
+    Integer findNextOrderIndex(Long courseId, Long excludedId, int orderIndex);
+
+    @Query(value = "SELECT max(order_index) FROM lessons "
+            + "WHERE course_id = :courseId AND order_index < :orderIndex AND id <> :excludedId", nativeQuery = true)
+    Integer findPreviousOrderIndex(Long courseId, Long excludedId, int orderIndex);
+
+    // 1-based rank of a position, the only form clients ever see
+    @Query(value = "SELECT count(*) FROM lessons WHERE course_id = :courseId AND order_index <= :orderIndex", nativeQuery = true)
+    long findPosition(Long courseId, int orderIndex);
+
+    @Modifying
+    @Query(value = "UPDATE lessons SET order_index = :orderIndex, version = version + 1, updated_at = now() "
+            + "WHERE id = :id", nativeQuery = true)
+    int updateOrderIndex(Long id, int orderIndex);
+
+    // --- Read projections for listings (only the needed columns, no Course/User graph) ---
+
+    @Query("select new com.jeremy.courses.LessonDetail(l.id, c.id, l.title, l.content, l.videoUrl, l.pdfUrl, "
+            + "row_number() over (order by l.orderIndex, l.id)) "
+            + "from Lesson l join l.course c where c.id = :courseId order by l.orderIndex, l.id")
+    List<LessonDetail> findDetailsByCourseId(Long courseId);
+
+    // Keyset page of the lessons a user may open: courses they authored or are enrolled in.
+    // Written as course_id IN (...) so the plan starts from the caller's few courses (idx_lessons_course_id).
+    // Pages span courses, so position is counted per row on the (course_id, order_index) index.
+    // Bodies are left out (see findAccessibleDetailPage for ?include=content).
+    @Query("select new com.jeremy.courses.LessonListItem(l.id, c.id, l.title, l.videoUrl, l.pdfUrl, "
+            + "(select count(p.id) from Lesson p where p.course.id = c.id and p.orderIndex <= l.orderIndex), "
+            + "coalesce(octet_length(l.content), l.contentSize, 0)) "
+            + "from Lesson l join l.course c "
+            + "where l.id > :after "
+            + "and (:courseId is null or c.id = :courseId) "
+            + "and (c.id in (select e.course.id from CourseEnrollment e where e.user.id = :userId) "
+            + "or c.id in (select ac.id from Course ac where ac.author.id = :userId)) "
+            + "order by l.id")
+    List<LessonListItem> findAccessiblePage(Long userId, Long courseId, Long after, Limit limit);
+
+    // Same page for admins, who can open every lesson
+    @Query("select new com.jeremy.courses.LessonListItem(l.id, c.id, l.title, l.videoUrl, l.pdfUrl, "
+            + "(select count(p.id) from Lesson p where p.course.id = c.id and p.orderIndex <= l.orderIndex), "
+            + "coalesce(octet_length(l.content), l.contentSize, 0)) "
+            + "from Lesson l join l.course c "
+            + "where l.id > :after and (:courseId is null or c.id = :courseId) "
+            + "order by l.id")
+    List<LessonListItem> findPage(Long courseId, Long after, Limit limit);
+
+    // The same two pages with bodies, only for an explicit ?include=content
+    @Query("select new com.jeremy.courses.LessonDetail(l.id, c.id, l.title, l.content, l.videoUrl, l.pdfUrl, "
+            + "(select count(p.id) from Lesson p where p.course.id = c.id and p.orderIndex <= l.orderIndex)) "
+            + "from Lesson l join l.course c "
+            + "where l.id > :after "
+            + "and (:courseId is null or c.id = :courseId) "
+            + "and (c.id in (select e.course.id from CourseEnrollment e where e.user.id = :userId) "
+            + "or c.id in (select ac.id from Course ac where ac.author.id = :userId)) "
+            + "order by l.id")
+    List<LessonDetail> findAccessibleDetailPage(Long userId, Long courseId, Long after, Limit limit);
+
+    @Query("select new com.jeremy.courses.LessonDetail(l.id, c.id, l.title, l.content, l.videoUrl, l.pdfUrl, "
+            + "(select count(p.id) from Lesson p where p.course.id = c.id and p.orderIndex <= l.orderIndex)) "
+            + "from Lesson l join l.course c "
+            + "where l.id > :after and (:courseId is null or c.id = :courseId) "
+            + "order by l.id")
+    List<LessonDetail> findDetailPage(Long courseId, Long after, Limit limit);
+
+    // octet_length only reads the stored size (content_size covers gzipped bodies), so bodies are never fetched
+    @Query("select new com.jeremy.courses.LessonSummary(l.id, l.title, "
+            + "row_number() over (order by l.orderIndex, l.id), "
+            + "case when l.pdfUrl is not null then true else false end, "
+            + "case when l.videoUrl is not null then true else false end, "
+            + "coalesce(octet_length(l.content), l.contentSize, 0)) "
+            + "from Lesson l where l.course.id = :courseId order by l.orderIndex, l.id")
+    List<LessonSummary> findSummariesByCourseId(Long courseId);
+
+    // The course's lessons in order with the user's progress left-joined in, one statement for the whole page
+    @Query("select new com.jeremy.courses.LessonProgressEntry(l.id, l.title, "
+            + "row_number() over (order by l.orderIndex, l.id), "
+            + "case when l.pdfUrl is not null then true else false end, "
+            + "case when l.videoUrl is not null then true else false end, "
+            + "coalesce(octet_length(l.content), l.contentSize, 0), "
+            + "coalesce(p.completed, false), p.completedAt) "
+            + "from Lesson l left join LessonProgress p on p.lesson.id = l.id and p.user.id = :userId "
+            + "where l.course.id = :courseId order by l.orderIndex, l.id")
+    List<LessonProgressEntry> findProgressByCourseId(Long courseId, Long userId);
+
+    @Query("select new com.jeremy.courses.LessonOutline(l.id, l.title, "
+            + "row_number() over (order by l.orderIndex, l.id)) "
+            + "from Lesson l where l.course.id = :courseId order by l.orderIndex, l.id")
+    List<LessonOutline> findOutlinesByCourseId(Long courseId);
+
+    // Batched so deleting a large course never holds long locks
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM lessons WHERE id IN "
+            + "(SELECT id FROM lessons WHERE course_id = :courseId LIMIT :batchSize)", nativeQuery = true)
+    int deleteBatchByCourseId(Long courseId, int batchSize);
 }
@@ -0,0 +1,9 @@
+package com.jeremy.courses;
+
+/**
+ * Read model for lesson sidebars: everything but the content body.
+ * contentLength is the stored size of the content in bytes; position is the 1-based place in the course.
+ */
+public record LessonSummary(Long id, String title, Long position,
+                            boolean hasPdf, boolean hasVideo, Integer contentLength) {
+}
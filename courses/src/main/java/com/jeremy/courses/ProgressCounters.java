@@ -0,0 +1,267 @@
+package com.jeremy.courses;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Array;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Keeps courses.lesson_count and course_enrollments.completed_lessons / last_activity_at in step with
+ * the rows they count. Every write that changes lessons or completions goes through here and adjusts
+ * the counter in the same transaction, with relative UPDATEs so concurrent writers never lose an increment.
+ *
+ * reconcile() recounts in batches and repairs any drift (rows written by other paths, manual fixes).
+ * It locks each batch of counter rows before counting, so a writer either finished before the count
+ * (and is included) or applies its delta after the repaired value. Counter rows are only ever locked
+ * FOR NO KEY UPDATE: it still serializes counter updates, but doesn't block the FOR KEY SHARE locks
+ * that inserting lessons, enrollments and progress rows take on the rows they reference.
+ */
+@Service
+public class ProgressCounters {
+
+    // Locks the enrollment before inserting, so a concurrent unenroll either runs before (nothing is inserted)
+    // or after (and removes the new row). Progress rows are only ever written completed, so an existing
+    // row means the lesson was already counted. A course flagged for deletion counts as not enrolled.
+    private static final String COMPLETE_SQL = """
+            WITH enrollment AS (
+                SELECT e.id FROM course_enrollments e JOIN courses c ON c.id = e.course_id AND NOT c.deleted
+                WHERE e.user_id = ? AND e.course_id = ? FOR NO KEY UPDATE OF e
+            ), done AS (
+                INSERT INTO lesson_progress (user_id, lesson_id, completed, completed_at)
+                SELECT ?, ?, true, localtimestamp FROM enrollment
+                ON CONFLICT (user_id, lesson_id) DO NOTHING
+                RETURNING completed_at
+            ), counted AS (
+                UPDATE course_enrollments
+                SET completed_lessons = completed_lessons + (SELECT count(*) FROM done), last_activity_at = now()
+                WHERE id IN (SELECT id FROM enrollment)
+            )
+            SELECT (SELECT count(*) FROM enrollment) AS enrolled,
+                   coalesce((SELECT completed_at FROM done),
+                            (SELECT completed_at FROM lesson_progress WHERE user_id = ? AND lesson_id = ?)) AS completed_at
+            """;
+
+    // Many completions at once (CompletionBuffer). Pairs whose enrollment or lesson is gone by now, or whose
+    // course is flagged for deletion, are skipped.
+    private static final String COMPLETE_ALL_SQL = """
+            WITH input AS (
+                SELECT DISTINCT ON (user_id, lesson_id) user_id, lesson_id, course_id, completed_at
+                FROM unnest(?::bigint[], ?::bigint[], ?::bigint[], ?::timestamp[]) AS t(user_id, lesson_id, course_id, completed_at)
+                ORDER BY user_id, lesson_id, completed_at
+            ), enrollment AS (
+                SELECT e.id, e.user_id, e.course_id FROM course_enrollments e
+                JOIN courses c ON c.id = e.course_id AND NOT c.deleted
+                WHERE (e.user_id, e.course_id) IN (SELECT user_id, course_id FROM input)
+                ORDER BY e.id
+                FOR NO KEY UPDATE OF e
+            ), done AS (
+                INSERT INTO lesson_progress (user_id, lesson_id, completed, completed_at)
+                SELECT i.user_id, i.lesson_id, true, i.completed_at
+                FROM input i
+                JOIN enrollment e ON e.user_id = i.user_id AND e.course_id = i.course_id
+                JOIN lessons l ON l.id = i.lesson_id AND l.course_id = i.course_id
+                ON CONFLICT (user_id, lesson_id) DO NOTHING
+                RETURNING user_id, lesson_id
+            ), counted AS (
+                UPDATE course_enrollments ce
+                SET completed_lessons = ce.completed_lessons + x.n, last_activity_at = now()
+                FROM (
+                    SELECT e.id, count(d.lesson_id)::int AS n
+                    FROM enrollment e
+                    JOIN input i ON i.user_id = e.user_id AND i.course_id = e.course_id
+                    LEFT JOIN done d ON d.user_id = i.user_id AND d.lesson_id = i.lesson_id
+                    GROUP BY e.id
+                ) x
+                WHERE ce.id = x.id
+                RETURNING x.n
+            )
+            SELECT coalesce(sum(n), 0) FROM counted
+            """;
+
+    // Enrollments are locked in id order here and in reconcile(), so the two never deadlock
+    private static final String UNCOUNT_LESSON_SQL = """
+            UPDATE course_enrollments SET completed_lessons = completed_lessons - 1
+            WHERE id IN (
+                SELECT e.id FROM course_enrollments e
+                JOIN lesson_progress p ON p.user_id = e.user_id
+                WHERE e.course_id = ? AND p.lesson_id = ? AND p.completed
+                ORDER BY e.id
+                FOR NO KEY UPDATE OF e
+            )
+            """;
+
+    private static final String RECOUNT_COURSES_SQL = """
+            UPDATE courses c SET lesson_count = x.n
+            FROM (
+                SELECT c2.id, count(l.id)::int AS n
+                FROM courses c2 LEFT JOIN lessons l ON l.course_id = c2.id
+                WHERE c2.id = ANY(?)
+                GROUP BY c2.id
+            ) x
+            WHERE c.id = x.id AND c.lesson_count <> x.n
+            """;
+
+    private static final String RECOUNT_ENROLLMENTS_SQL = """
+            UPDATE course_enrollments e SET completed_lessons = x.n
+            FROM course_enrollments e2
+            CROSS JOIN LATERAL (
+                SELECT count(*)::int AS n
+                FROM lesson_progress p JOIN lessons l ON l.id = p.lesson_id
+                WHERE p.user_id = e2.user_id AND l.course_id = e2.course_id AND p.completed
+            ) x
+            WHERE e2.id = ANY(?) AND e.id = e2.id AND e.completed_lessons <> x.n
+            """;
+
+    public enum Outcome { COMPLETED, NOT_ENROLLED, LESSON_NOT_FOUND }
+
+    // completedAt is the original completion time when the lesson was already completed
+    public record Completion(Outcome outcome, LocalDateTime completedAt) {
+    }
+
+    public record Repair(int courses, int enrollments) {
+    }
+
+    public record PendingCompletion(Long userId, Long lessonId, Long courseId, LocalDateTime completedAt) {
+    }
+
+    private record Batch(long lastId, int size, int repaired) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    public ProgressCounters(JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${courses.progress.reconcile.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    // Locks are taken lesson first, then enrollment, the same order as deleteLesson
+    @Transactional
+    public Completion complete(Long userId, Long lessonId, Long courseId) {
+        if (jdbcTemplate.queryForList("SELECT id FROM lessons WHERE id = ? AND course_id = ? FOR KEY SHARE",
+                Long.class, lessonId, courseId).isEmpty()) {
+            return new Completion(Outcome.LESSON_NOT_FOUND, null);
+        }
+        return jdbcTemplate.query(COMPLETE_SQL, rs -> {
+            rs.next();
+            if (rs.getLong("enrolled") == 0) {
+                return new Completion(Outcome.NOT_ENROLLED, null);
+            }
+            Timestamp completedAt = rs.getTimestamp("completed_at");
+            return new Completion(Outcome.COMPLETED, completedAt.toLocalDateTime());
+        }, userId, courseId, userId, lessonId, userId, lessonId);
+    }
+
+    // Writes a batch of completions in two statements; returns how many were new
+    @Transactional
+    public int completeAll(List<PendingCompletion> completions) {
+        if (completions.isEmpty()) {
+            return 0;
+        }
+        Object[] userIds = completions.stream().map(PendingCompletion::userId).toArray();
+        Object[] lessonIds = completions.stream().map(PendingCompletion::lessonId).toArray();
+        Object[] courseIds = completions.stream().map(PendingCompletion::courseId).toArray();
+        Object[] completedAt = completions.stream().map(c -> Timestamp.valueOf(c.completedAt())).toArray();
+
+        // Lesson locks first, in id order, as in complete() and deleteLesson()
+        jdbcTemplate.query("SELECT id FROM lessons WHERE id = ANY(?) ORDER BY id FOR KEY SHARE",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", lessonIds)),
+                rs -> {
+                });
+        return jdbcTemplate.query(COMPLETE_ALL_SQL, ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("bigint", userIds));
+            ps.setArray(2, ps.getConnection().createArrayOf("bigint", lessonIds));
+            ps.setArray(3, ps.getConnection().createArrayOf("bigint", courseIds));
+            ps.setArray(4, ps.getConnection().createArrayOf("timestamp", completedAt));
+        }, rs -> {
+            rs.next();
+            return rs.getInt(1);
+        });
+    }
+
+    // Called inside the transaction that inserts the lessons
+    public void lessonsAdded(Long courseId, int count) {
+        jdbcTemplate.update("UPDATE courses SET lesson_count = lesson_count + ? WHERE id = ?", count, courseId);
+    }
+
+    // Deletes a lesson with its progress rows, taking it out of the course's and every completer's count.
+    // The lesson row is locked first: completions of it wait and then find it gone.
+    @Transactional
+    public boolean deleteLesson(Long lessonId, Long courseId) {
+        List<Long> locked = jdbcTemplate.queryForList("SELECT id FROM lessons WHERE id = ? FOR UPDATE", Long.class, lessonId);
+        if (locked.isEmpty()) {
+            return false;
+        }
+        jdbcTemplate.update(UNCOUNT_LESSON_SQL, courseId, lessonId);
+        jdbcTemplate.update("DELETE FROM lesson_progress WHERE lesson_id = ?", lessonId);
+        jdbcTemplate.update("DELETE FROM lessons WHERE id = ?", lessonId);
+        // Also moves the lesson list's Last-Modified, which a deleted row can't do
+        jdbcTemplate.update("UPDATE courses SET lesson_count = lesson_count - 1, updated_at = now() WHERE id = ?", courseId);
+        return true;
+    }
+
+    // Removes the enrollment, then the user's progress in the course. Deleting the enrollment first
+    // waits out any completion in flight, so its progress row is visible to (and removed by) the second DELETE.
+    @Transactional
+    public boolean unenroll(Long userId, Long courseId) {
+        if (jdbcTemplate.update("DELETE FROM course_enrollments WHERE user_id = ? AND course_id = ?", userId, courseId) == 0) {
+            return false;
+        }
+        jdbcTemplate.update("DELETE FROM lesson_progress p USING lessons l "
+                + "WHERE l.id = p.lesson_id AND l.course_id = ? AND p.user_id = ?", courseId, userId);
+        return true;
+    }
+
+    @Scheduled(initialDelayString = "${courses.progress.reconcile.initial-delay-ms:60000}",
+            fixedDelayString = "${courses.progress.reconcile.interval-ms:3600000}")
+    public void scheduledReconcile() {
+        reconcile();
+    }
+
+    public Repair reconcile() {
+        int courses = recount("SELECT id FROM courses WHERE id > ? ORDER BY id LIMIT ? FOR NO KEY UPDATE", RECOUNT_COURSES_SQL);
+        int enrollments = recount("SELECT id FROM course_enrollments WHERE id > ? ORDER BY id LIMIT ? FOR NO KEY UPDATE",
+                RECOUNT_ENROLLMENTS_SQL);
+        if (courses > 0 || enrollments > 0) {
+            System.out.println("Repaired progress counters on " + courses + " courses and " + enrollments + " enrollments");
+        }
+        return new Repair(courses, enrollments);
+    }
+
+    // One short transaction per batch: lock the counter rows, then recount them with a fresh snapshot
+    private int recount(String lockSql, String recountSql) {
+        int repaired = 0;
+        long after = 0;
+        while (true) {
+            long from = after;
+            Batch batch = transactionTemplate.execute(status -> {
+                List<Long> ids = jdbcTemplate.queryForList(lockSql, Long.class, from, batchSize);
+                if (ids.isEmpty()) {
+                    return new Batch(from, 0, 0);
+                }
+                int updated = jdbcTemplate.update(recountSql, ps -> {
+                    Array array = ps.getConnection().createArrayOf("bigint", ids.toArray());
+                    ps.setArray(1, array);
+                });
+                return new Batch(ids.get(ids.size() - 1), ids.size(), updated);
+            });
+            repaired += batch.repaired();
+            if (batch.size() < batchSize) {
+                return repaired;
+            }
+            after = batch.lastId();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.jeremy.courses;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pre-serialized first page of the anonymous course catalog (unrestricted courses),
+ * served as bytes with a strong ETag. Rebuilt in the background whenever course data changes.
+ *
+ * Local writes only reach this node, so a snapshot older than max-age-seconds is also rebuilt:
+ * the request that notices serves the old one and triggers the rebuild, which bounds how long
+ * a node can lag behind changes made on other instances.
+ */
+@Component
+public class PublicCatalogSnapshot {
+
+    public record Snapshot(byte[] body, String etag, String nextCursor, long builtAtMillis) {
+    }
+
+    private final CourseRepository courseRepository;
+    private final JsonMapper jsonMapper;
+    private final long maxAgeMillis;
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "catalog-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Collapses bursts of changes into a single rebuild
+    private final AtomicBoolean rebuildPending = new AtomicBoolean(false);
+
+    private volatile Snapshot current;
+
+    public PublicCatalogSnapshot(CourseRepository courseRepository, JsonMapper jsonMapper,
+                                 @Value("${courses.catalog.snapshot.max-age-seconds:30}") long maxAgeSeconds) {
+        this.courseRepository = courseRepository;
+        this.jsonMapper = jsonMapper;
+        this.maxAgeMillis = maxAgeSeconds * 1000;
+    }
+
+    public Snapshot get() {
+        Snapshot snapshot = current;
+        if (snapshot == null) {
+            snapshot = rebuild();
+        } else if (System.currentTimeMillis() - snapshot.builtAtMillis() >= maxAgeMillis) {
+            markStale();
+        }
+        return snapshot;
+    }
+
+    // Call after any committed change that can affect the public catalog
+    public void markStale() {
+        if (rebuildPending.compareAndSet(false, true)) {
+            rebuildExecutor.execute(() -> {
+                rebuildPending.set(false);
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    // Keep serving the previous snapshot; drop it so the next request rebuilds inline
+                    System.err.println("Failed to rebuild public catalog snapshot: " + e.getMessage());
+                    current = null;
+                }
+            });
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        markStale();
+    }
+
+    private synchronized Snapshot rebuild() {
+        long builtAt = System.currentTimeMillis();
+        int pageSize = CourseController.DEFAULT_PAGE_SIZE;
+        List<CourseSummary> page = courseRepository.findVisiblePage(0L, null, null, false, Limit.of(pageSize + 1));
+        String nextCursor = null;
+        if (page.size() > pageSize) {
+            page = page.subList(0, pageSize);
+            nextCursor = String.valueOf(page.get(pageSize - 1).id());
+        }
+
+        byte[] body = jsonMapper.writeValueAsBytes(page);
+        Snapshot snapshot = new Snapshot(body, etagOf(body, nextCursor), nextCursor, builtAt);
+        current = snapshot;
+        return snapshot;
+    }
+
+    private static String etagOf(byte[] body, String nextCursor) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(body);
+            if (nextCursor != null) {
+                digest.update(nextCursor.getBytes());
+            }
+            return "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,71 @@
+package com.jeremy.courses;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Revocation record for signed access tokens. Either a single token (tokenId)
+ * or every token of a user issued before revokedBefore.
+ * Rows can be dropped once expiresAt has passed since the tokens they cover are expired anyway.
+ */
+@Entity
+@Table(name = "revoked_tokens", indexes = {
+    @Index(name = "idx_revoked_tokens_expires_at", columnList = "expires_at")
+})
+public class RevokedToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "token_id", length = 64)
+    private String tokenId;
+
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "revoked_before")
+    private Instant revokedBefore;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    public RevokedToken() {
+    }
+
+    public static RevokedToken forToken(String tokenId, Instant expiresAt) {
+        RevokedToken revoked = new RevokedToken();
+        revoked.tokenId = tokenId;
+        revoked.expiresAt = expiresAt;
+        return revoked;
+    }
+
+    public static RevokedToken forUser(Long userId, Instant revokedBefore, Instant expiresAt) {
+        RevokedToken revoked = new RevokedToken();
+        revoked.userId = userId;
+        revoked.revokedBefore = revokedBefore;
+        revoked.expiresAt = expiresAt;
+        return revoked;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Instant getRevokedBefore() {
+        return revokedBefore;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
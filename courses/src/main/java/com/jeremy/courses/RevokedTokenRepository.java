@@ -0,0 +1,15 @@
+package com.jeremy.courses;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, Long> {
+    // Every revocation still in force; the denylist re-reads them all on each refresh
+    List<RevokedToken> findByExpiresAtAfter(Instant now);
+
+    @Transactional
+    long deleteByExpiresAtBefore(Instant now);
+}
@@ -0,0 +1,61 @@
+package com.jeremy.courses;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/search")
+public class SearchController {
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 50;
+    private static final int MAX_QUERY_LENGTH = 200;
+    // Deep offsets get expensive with ranked results; refine the query instead
+    private static final int MAX_PAGE = 500;
+
+    private final SearchService searchService;
+
+    public SearchController(SearchService searchService) {
+        this.searchService = searchService;
+    }
+
+    // Usage: GET /search?q=spring+security&page=0&size=20
+    // Results are ranked (title matches weigh more than body matches) with <mark>-highlighted snippets.
+    // Lessons the caller cannot open are listed with a title-only snippet.
+    @GetMapping
+    public ResponseEntity<?> search(@RequestParam(required = false) String q,
+                                    @RequestParam(required = false) Integer page,
+                                    @RequestParam(required = false) Integer size,
+                                    AuthenticatedUser user) {
+        if (q == null || q.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Query parameter 'q' is required"));
+        }
+        if (q.length() > MAX_QUERY_LENGTH) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Query is too long"));
+        }
+
+        int pageNumber = (page == null || page < 0) ? 0 : Math.min(page, MAX_PAGE);
+        int pageSize = (size == null || size < 1) ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE);
+
+        // One extra row tells us whether another page exists
+        List<SearchService.SearchHit> hits = searchService.search(q.trim(), user, pageNumber * pageSize, pageSize + 1);
+        boolean hasMore = hits.size() > pageSize;
+        if (hasMore) {
+            hits = hits.subList(0, pageSize);
+        }
+
+        return ResponseEntity.ok(Map.of(
+                "query", q.trim(),
+                "page", pageNumber,
+                "size", pageSize,
+                "hasMore", hasMore,
+                "results", hits
+        ));
+    }
+}
@@ -0,0 +1,92 @@
+package com.jeremy.courses;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Ranked full-text search over courses (title, description) and lessons (title, content),
+ * backed by the search_vector columns and GIN indexes from DatabaseSchemaInitializer.
+ *
+ * Visibility matches the rest of the API: a hit is returned only if its course is visible
+ * (unrestricted, author, admin or allowlisted), and a lesson's content is only used for the
+ * snippet when the caller could open the lesson (author/admin, or enrolled and allowed).
+ */
+@Service
+public class SearchService {
+
+    public record SearchHit(String type, Long id, Long courseId, String title, String snippet,
+                            boolean fullAccess, double rank) {
+    }
+
+    // Rank and paginate on the indexes first; ts_headline is only computed for the returned page
+    private static final String SEARCH_SQL = """
+            WITH query AS (SELECT websearch_to_tsquery('english', :q) AS tsq),
+            visible AS (
+                SELECT c.id, c.author_id, c.restricted_to_allow_list FROM courses c
+                WHERE c.deleted = false
+                  AND (c.restricted_to_allow_list = false OR :isAdmin OR c.author_id = :userId
+                       OR EXISTS (SELECT 1 FROM course_allowed_emails a WHERE a.course_id = c.id AND a.email = :email))
+            ),
+            hits AS (
+                SELECT 'course' AS type, c.id, c.id AS course_id, true AS full_access,
+                       ts_rank(c.search_vector, query.tsq) AS rank
+                FROM courses c JOIN visible v ON v.id = c.id, query
+                WHERE c.search_vector @@ query.tsq
+                UNION ALL
+                SELECT 'lesson', l.id, l.course_id,
+                       (:isAdmin OR v.author_id = :userId
+                        OR EXISTS (SELECT 1 FROM course_enrollments e WHERE e.course_id = v.id AND e.user_id = :userId)),
+                       ts_rank(l.search_vector, query.tsq)
+                FROM lessons l JOIN visible v ON v.id = l.course_id, query
+                WHERE l.search_vector @@ query.tsq
+                ORDER BY rank DESC, type, id
+                LIMIT :limit OFFSET :offset
+            )
+            SELECT h.type, h.id, h.course_id, h.full_access, h.rank,
+                   coalesce(c.title, l.title) AS title,
+                   CASE
+                       WHEN h.type = 'course' THEN ts_headline('english', coalesce(c.description, ''), query.tsq, :headlineOptions)
+                       -- Gzipped bodies (content is NULL) fall back to the title
+                       WHEN h.full_access THEN ts_headline('english', coalesce(l.content, l.title, ''), query.tsq, :headlineOptions)
+                       ELSE ts_headline('english', coalesce(l.title, ''), query.tsq, :headlineOptions)
+                   END AS snippet
+            FROM hits h
+            LEFT JOIN courses c ON h.type = 'course' AND c.id = h.id
+            LEFT JOIN lessons l ON h.type = 'lesson' AND l.id = h.id,
+            query
+            ORDER BY h.rank DESC, h.type, h.id
+            """;
+
+    private static final String HEADLINE_OPTIONS = "StartSel=<mark>, StopSel=</mark>, MaxWords=35, MinWords=15, MaxFragments=2";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public SearchService(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public List<SearchHit> search(String query, AuthenticatedUser user, int offset, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("q", query)
+                .addValue("isAdmin", user != null && user.isAdmin())
+                // -1 / "" never match a real author, enrollment or allowlist row
+                .addValue("userId", user != null ? user.id() : -1L)
+                .addValue("email", user != null ? user.email().toLowerCase() : "")
+                .addValue("limit", limit)
+                .addValue("offset", offset)
+                .addValue("headlineOptions", HEADLINE_OPTIONS);
+
+        return jdbcTemplate.query(SEARCH_SQL, params, (rs, rowNum) -> new SearchHit(
+                rs.getString("type"),
+                rs.getLong("id"),
+                rs.getLong("course_id"),
+                rs.getString("title"),
+                rs.getString("snippet"),
+                rs.getBoolean("full_access"),
+                rs.getDouble("rank")
+        ));
+    }
+}
@@ -1,5 +1,6 @@
 package com.jeremy.courses;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
@@ -25,10 +26,10 @@ import java.util.List;
 @EnableMethodSecurity
 public class SecurityConfig {
 
-    private final UserRepository userRepository;
+    private final AuthTokenService authTokenService;
 
-    public SecurityConfig(UserRepository userRepository) {
-        this.userRepository = userRepository;
+    public SecurityConfig(AuthTokenService authTokenService) {
+        this.authTokenService = authTokenService;
     }
 
     @Bean
@@ -42,6 +43,7 @@ public class SecurityConfig {
                                 "/courses",        // Public courses listing
                                 "/courses/",       // Trailing slash variant
                                 "/courses/**",     // Any nested course paths (safe to keep public listing)
+                                "/search",         // Full-text search (results filtered by visibility)
                                 "/users/register", // Registration endpoint
                                 "/auth/login",     // JSON login endpoint
                                 "/auth/reset-password", // Password reset via token
@@ -51,6 +53,7 @@ public class SecurityConfig {
                                 "/swagger-ui.html",
                                 "/files/**"
                         ).permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
                         .anyRequest().authenticated()
                 )
                 .addFilterBefore(tokenAuthFilter(), UsernamePasswordAuthenticationFilter.class)
@@ -75,13 +78,13 @@ public class SecurityConfig {
                 if (authHeader != null && authHeader.startsWith("Bearer ")) {
                     String token = authHeader.substring(7);
                     if (!token.isEmpty() && SecurityContextHolder.getContext().getAuthentication() == null) {
-                        User user = userRepository.findByAuthToken(token);
-                        if (user != null) {
+                        AuthenticatedUser principal = authTokenService.authenticate(token);
+                        if (principal != null) {
                             UsernamePasswordAuthenticationToken authentication =
                                     new UsernamePasswordAuthenticationToken(
-                                            user.getEmail(),
+                                            principal,
                                             null,
-                                            List.of(new SimpleGrantedAuthority("ROLE_" + user.getRole()))
+                                            List.of(new SimpleGrantedAuthority("ROLE_" + principal.role()))
                                     );
                             SecurityContextHolder.getContext().setAuthentication(authentication);
                         }
@@ -93,8 +96,9 @@ public class SecurityConfig {
         };
     }
 
+    // Raising the strength re-hashes existing passwords on their next successful login
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${auth.bcrypt.strength:10}") int strength) {
+        return new BCryptPasswordEncoder(strength);
     }
 }
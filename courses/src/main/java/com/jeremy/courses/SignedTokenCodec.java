@@ -0,0 +1,85 @@
+package com.jeremy.courses;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Encodes and verifies self-contained HMAC-SHA256 access tokens.
+ *
+ * Format: base64url(payload) + "." + base64url(hmac(payload)), where payload is
+ * "tokenId|userId|role|issuedAtMillis|expiresAtMillis|email". Email goes last
+ * since it is the only field that could contain the separator.
+ */
+public class SignedTokenCodec {
+
+    public record Claims(String tokenId, Long userId, String role, long issuedAtMillis, long expiresAtMillis,
+                         String email) {
+    }
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+
+    public SignedTokenCodec(String secret) {
+        if (secret == null || secret.getBytes(StandardCharsets.UTF_8).length < 32) {
+            throw new IllegalStateException("auth.signing-secret must be at least 32 bytes when auth.token-mode=signed");
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    public String encode(Claims claims) {
+        String payload = String.join("|",
+                claims.tokenId(),
+                String.valueOf(claims.userId()),
+                claims.role(),
+                String.valueOf(claims.issuedAtMillis()),
+                String.valueOf(claims.expiresAtMillis()),
+                claims.email());
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(payloadBytes) + "." + encoder.encodeToString(sign(payloadBytes));
+    }
+
+    /**
+     * Returns the claims if the signature is valid and the token hasn't expired, otherwise null.
+     */
+    public Claims decode(String token, long nowMillis) {
+        int dot = token.indexOf('.');
+        if (dot <= 0 || dot == token.length() - 1) {
+            return null;
+        }
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            byte[] payloadBytes = decoder.decode(token.substring(0, dot));
+            byte[] signature = decoder.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(sign(payloadBytes), signature)) {
+                return null;
+            }
+
+            String[] parts = new String(payloadBytes, StandardCharsets.UTF_8).split("\\|", 6);
+            if (parts.length != 6) {
+                return null;
+            }
+            Claims claims = new Claims(parts[0], Long.valueOf(parts[1]), parts[2],
+                    Long.parseLong(parts[3]), Long.parseLong(parts[4]), parts[5]);
+            return claims.expiresAtMillis() > nowMillis ? claims : null;
+        } catch (IllegalArgumentException e) {
+            // Bad base64 or malformed numbers
+            return null;
+        }
+    }
+
+    private byte[] sign(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC signing unavailable", e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.jeremy.courses;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory view of revoked_tokens used by signed-token authentication.
+ *
+ * Rebuilt from the table at startup and on every poll afterwards so revocations made on
+ * other nodes are picked up without sticky sessions. Each poll re-reads every unexpired row
+ * rather than only ids above the last one seen: sequence ids don't commit in order, so a
+ * revocation with a lower id can become visible after a higher one. The table only holds
+ * revocations of tokens that are still valid, which keeps the re-read small.
+ */
+@Component
+@ConditionalOnProperty(name = "auth.token-mode", havingValue = "signed")
+public class TokenDenylist {
+
+    private record UserCutoff(long revokedBeforeMillis, long expiresAtMillis) {
+    }
+
+    private final RevokedTokenRepository revokedTokenRepository;
+
+    // tokenId -> expiry (epoch millis); replaced wholesale on every refresh
+    private volatile Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+    // userId -> tokens issued before the cutoff are revoked
+    private volatile Map<Long, UserCutoff> revokedBefore = new ConcurrentHashMap<>();
+
+    public TokenDenylist(RevokedTokenRepository revokedTokenRepository) {
+        this.revokedTokenRepository = revokedTokenRepository;
+    }
+
+    public boolean isRevoked(SignedTokenCodec.Claims claims) {
+        if (revokedTokens.containsKey(claims.tokenId())) {
+            return true;
+        }
+        UserCutoff cutoff = revokedBefore.get(claims.userId());
+        return cutoff != null && claims.issuedAtMillis() < cutoff.revokedBeforeMillis();
+    }
+
+    public void revokeToken(String tokenId, Instant expiresAt) {
+        apply(revokedTokenRepository.save(RevokedToken.forToken(tokenId, expiresAt)));
+    }
+
+    public void revokeUser(Long userId, Instant revokedBefore, Instant expiresAt) {
+        apply(revokedTokenRepository.save(RevokedToken.forUser(userId, revokedBefore, expiresAt)));
+    }
+
+    // Loaded while the context starts, before the web server takes requests
+    @PostConstruct
+    public void rebuild() {
+        refresh();
+    }
+
+    // Local revocations are applied under the same lock, so one saved while the query runs is
+    // applied to the new maps after the swap rather than lost with the old ones
+    @Scheduled(fixedDelayString = "${auth.revocation.refresh-interval-ms:30000}",
+            initialDelayString = "${auth.revocation.refresh-interval-ms:30000}")
+    public synchronized void refresh() {
+        Instant now = Instant.now();
+        // Expired tokens fail verification anyway, so their revocations can go
+        revokedTokenRepository.deleteByExpiresAtBefore(now);
+
+        Map<String, Long> tokens = new ConcurrentHashMap<>();
+        Map<Long, UserCutoff> users = new ConcurrentHashMap<>();
+        for (RevokedToken row : revokedTokenRepository.findByExpiresAtAfter(now)) {
+            apply(row, tokens, users);
+        }
+        revokedTokens = tokens;
+        revokedBefore = users;
+    }
+
+    private synchronized void apply(RevokedToken row) {
+        apply(row, revokedTokens, revokedBefore);
+    }
+
+    private static void apply(RevokedToken row, Map<String, Long> tokens, Map<Long, UserCutoff> users) {
+        if (row.getTokenId() != null) {
+            tokens.put(row.getTokenId(), row.getExpiresAt().toEpochMilli());
+        }
+        if (row.getUserId() != null && row.getRevokedBefore() != null) {
+            UserCutoff cutoff = new UserCutoff(row.getRevokedBefore().toEpochMilli(), row.getExpiresAt().toEpochMilli());
+            users.merge(row.getUserId(), cutoff,
+                    (a, b) -> a.revokedBeforeMillis() >= b.revokedBeforeMillis() ? a : b);
+        }
+    }
+}
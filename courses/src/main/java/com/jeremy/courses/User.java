@@ -6,7 +6,11 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = {
+    @Index(name = "idx_users_email", columnList = "email"),
+    @Index(name = "idx_users_password_reset_token", columnList = "password_reset_token", unique = true),
+    @Index(name = "idx_users_password_reset_token_expiry", columnList = "password_reset_token_expiry")
+})
 public class User {
 
     @Id
@@ -21,10 +25,6 @@ public class User {
     private String password;
     private String role;
 
-    // Opaque auth token for API authentication (Bearer token)
-    @JsonIgnore
-    private String authToken;
-
     // Password reset token and expiry for admin-initiated resets
     @JsonIgnore
     private String passwordResetToken;
@@ -92,14 +92,6 @@ public class User {
         this.role = role;
     }
 
-    public String getAuthToken() {
-        return authToken;
-    }
-
-    public void setAuthToken(String authToken) {
-        this.authToken = authToken;
-    }
-
     public String getPasswordResetToken() {
         return passwordResetToken;
     }
@@ -2,8 +2,6 @@ package com.jeremy.courses;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
@@ -14,25 +12,25 @@ import java.util.UUID;
 public class UserController {
 
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
+    private final AuthTokenService authTokenService;
 
-    // 2. Inject the repository and password encoder so the controller can access the database
-    public UserController(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    // 2. Inject the repository and password hashing service so the controller can access the database
+    public UserController(UserRepository userRepository, PasswordHashingService passwordHashingService, AuthTokenService authTokenService) {
         this.userRepository = userRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingService = passwordHashingService;
+        this.authTokenService = authTokenService;
     }
 
     // 3. Map HTTP GET requests to "/users" to this method - ADMIN only
     @GetMapping("/users")
-    public ResponseEntity<?> getAllUsers(Authentication authentication) {
-        if (authentication == null || !authentication.isAuthenticated()) {
+    public ResponseEntity<?> getAllUsers(AuthenticatedUser user) {
+        if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
         }
 
         // Check if user has ADMIN role
-        String email = authentication.getName();
-        User user = userRepository.findByEmail(email);
-        if (user == null || !"ADMIN".equals(user.getRole())) {
+        if (!user.isAdmin()) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "Only admins can access this endpoint"));
         }
 
@@ -58,7 +56,7 @@ public class UserController {
         }
 
         // Create new user - always STUDENT role
-        User newUser = new User(email, passwordEncoder.encode(password), "STUDENT");
+        User newUser = new User(email, passwordHashingService.encode(password), "STUDENT");
         if (name != null && !name.isEmpty()) {
             newUser.setName(name);
         }
@@ -72,13 +70,12 @@ public class UserController {
 
     // 6. Get current authenticated user (based on Bearer token)
     @GetMapping("/users/me")
-    public ResponseEntity<?> getCurrentUser(Authentication authentication) {
-        if (authentication == null || !authentication.isAuthenticated()) {
+    public ResponseEntity<?> getCurrentUser(AuthenticatedUser currentUser) {
+        if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
         }
 
-        String email = authentication.getName();
-        User user = userRepository.findByEmail(email);
+        User user = userRepository.findById(currentUser.id()).orElse(null);
 
         if (user == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "User not found"));
@@ -89,15 +86,13 @@ public class UserController {
 
     // 7. Admin endpoint to upgrade a user to CREATOR role
     @PostMapping("/users/{userId}/upgrade-to-creator")
-    public ResponseEntity<?> upgradeUserToCreator(@PathVariable Long userId, Authentication authentication) {
-        if (authentication == null || !authentication.isAuthenticated()) {
+    public ResponseEntity<?> upgradeUserToCreator(@PathVariable Long userId, AuthenticatedUser admin) {
+        if (admin == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
         }
 
         // Check if requester is ADMIN
-        String email = authentication.getName();
-        User admin = userRepository.findByEmail(email);
-        if (admin == null || !"ADMIN".equals(admin.getRole())) {
+        if (!admin.isAdmin()) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "Only admins can upgrade users"));
         }
 
@@ -113,6 +108,8 @@ public class UserController {
 
         user.setRole("CREATOR");
         User updatedUser = userRepository.save(user);
+        // Cached principals still carry the old role
+        authTokenService.userChanged(updatedUser.getId());
 
         return ResponseEntity.ok(Map.of(
                 "message", "User successfully upgraded to CREATOR",
@@ -122,15 +119,13 @@ public class UserController {
 
     // 8. Admin endpoint to generate a password reset link for a user
     @PostMapping("/users/{userId}/reset-password")
-    public ResponseEntity<?> createPasswordResetToken(@PathVariable Long userId, Authentication authentication) {
-        if (authentication == null || !authentication.isAuthenticated()) {
+    public ResponseEntity<?> createPasswordResetToken(@PathVariable Long userId, AuthenticatedUser admin) {
+        if (admin == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
         }
 
         // Check if requester is ADMIN
-        String email = authentication.getName();
-        User admin = userRepository.findByEmail(email);
-        if (admin == null || !"ADMIN".equals(admin.getRole())) {
+        if (!admin.isAdmin()) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "Only admins can reset passwords"));
         }
 
@@ -1,9 +1,25 @@
 package com.jeremy.courses;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     User findByEmail(String email);
-    User findByAuthToken(String authToken);
     User findByPasswordResetToken(String passwordResetToken);
+
+    @Transactional
+    @Modifying
+    // Only replaces the hash it was computed from, so a password reset in the meantime wins
+    @Query("update User u set u.password = :newPassword where u.id = :userId and u.password = :oldPassword")
+    int upgradePassword(Long userId, String oldPassword, String newPassword);
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE users SET password_reset_token = NULL, password_reset_token_expiry = NULL WHERE id IN "
+            + "(SELECT id FROM users WHERE password_reset_token_expiry < :now LIMIT :batchSize)", nativeQuery = true)
+    int clearExpiredPasswordResetTokens(LocalDateTime now, int batchSize);
 }
@@ -1,10 +1,13 @@
 package com.jeremy.courses;
 
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.List;
+
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
@@ -17,6 +20,12 @@ public class WebConfig implements WebMvcConfigurer {
                 .addResourceLocations(uploadLocation);
     }
 
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+        // Lets controllers take an AuthenticatedUser parameter instead of re-loading the user
+        resolvers.add(new CurrentUserArgumentResolver());
+    }
+
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/**")
@@ -28,6 +37,8 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                 // Allow all headers so preflight doesn't fail when browser adds extra ones
                 .allowedHeaders("*")
+                // Let the frontend read pagination cursors
+                .exposedHeaders("X-Next-Cursor")
                 .allowCredentials(true);
     }
 }
@@ -0,0 +1,157 @@
+package com.jeremy.courses;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Opaque-mode sessions: one per device, revoked one at a time on logout or all at once on
+ * password reset, and swept once expired.
+ */
+@SpringBootTest
+class AuthSessionIntegrationTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private AuthSessionSweeper authSessionSweeper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    private User newUser() {
+        return userRepository.save(new User("sessions-" + UUID.randomUUID() + "@example.com", passwordEncoder.encode("secret"), "STUDENT"));
+    }
+
+    private String login(User user, String device) throws Exception {
+        String response = mockMvc.perform(post("/auth/login")
+                        .header("User-Agent", device)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + user.getEmail() + "\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.token");
+    }
+
+    private int me(String token) throws Exception {
+        return mockMvc.perform(get("/users/me").header("Authorization", "Bearer " + token))
+                .andReturn().getResponse().getStatus();
+    }
+
+    private List<String> devices(User user) {
+        return jdbcTemplate.queryForList("SELECT device FROM auth_sessions WHERE user_id = ? ORDER BY device",
+                String.class, user.getId());
+    }
+
+    @Test
+    void eachDeviceGetsItsOwnSession() throws Exception {
+        User user = newUser();
+        String laptop = login(user, "laptop");
+        String phone = login(user, "phone");
+
+        assertNotEquals(laptop, phone);
+        assertEquals(List.of("laptop", "phone"), devices(user));
+        assertEquals(200, me(laptop));
+        assertEquals(200, me(phone));
+    }
+
+    @Test
+    void logoutRevokesOnlyThatDevice() throws Exception {
+        User user = newUser();
+        String laptop = login(user, "laptop");
+        String phone = login(user, "phone");
+        // Both tokens are cached by the filter before the logout
+        assertEquals(200, me(laptop));
+        assertEquals(200, me(phone));
+
+        mockMvc.perform(post("/auth/logout").header("Authorization", "Bearer " + laptop))
+                .andExpect(status().isOk());
+
+        assertEquals(401, me(laptop));
+        assertEquals(200, me(phone));
+        assertEquals(List.of("phone"), devices(user));
+    }
+
+    @Test
+    void passwordResetRevokesEveryDevice() throws Exception {
+        User user = newUser();
+        String laptop = login(user, "laptop");
+        String phone = login(user, "phone");
+        assertEquals(200, me(laptop));
+        assertEquals(200, me(phone));
+
+        String resetToken = UUID.randomUUID().toString();
+        user.setPasswordResetToken(resetToken);
+        user.setPasswordResetTokenExpiry(LocalDateTime.now().plusHours(1));
+        userRepository.save(user);
+        mockMvc.perform(post("/auth/reset-password")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"token\":\"" + resetToken + "\",\"newPassword\":\"secret\"}"))
+                .andExpect(status().isOk());
+
+        assertEquals(401, me(laptop));
+        assertEquals(401, me(phone));
+        assertEquals(List.of(), devices(user));
+    }
+
+    @Test
+    void sweeperRemovesOnlyExpiredSessionsAndResetTokens() throws Exception {
+        User user = newUser();
+        String laptop = login(user, "laptop");
+        String phone = login(user, "phone");
+        jdbcTemplate.update("UPDATE auth_sessions SET expires_at = now() - interval '1 minute' WHERE user_id = ? AND device = 'laptop'",
+                user.getId());
+
+        User expiredReset = newUser();
+        expiredReset.setPasswordResetToken(UUID.randomUUID().toString());
+        expiredReset.setPasswordResetTokenExpiry(LocalDateTime.now().minusMinutes(1));
+        userRepository.save(expiredReset);
+        User validReset = newUser();
+        validReset.setPasswordResetToken(UUID.randomUUID().toString());
+        validReset.setPasswordResetTokenExpiry(LocalDateTime.now().plusHours(1));
+        userRepository.save(validReset);
+
+        authSessionSweeper.sweep();
+
+        assertEquals(List.of("phone"), devices(user));
+        assertEquals(401, me(laptop));
+        assertEquals(200, me(phone));
+        assertNull(userRepository.findById(expiredReset.getId()).orElseThrow().getPasswordResetToken());
+        assertNotNull(userRepository.findById(validReset.getId()).orElseThrow().getPasswordResetToken());
+    }
+}
@@ -0,0 +1,90 @@
+package com.jeremy.courses;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuthTokenCacheTests {
+
+    private long nextId = 1;
+
+    private static final Instant FAR_FUTURE = Instant.now().plusSeconds(86400);
+
+    private static void put(AuthTokenCache cache, String token, User user) {
+        cache.put(token, user, FAR_FUTURE, cache.generation());
+    }
+
+    private User user(String email, String role) {
+        User user = new User(email, "hash", role);
+        ReflectionTestUtils.setField(user, "id", nextId++);
+        return user;
+    }
+
+    @Test
+    void cachedTokenIsServedUntilUserIsInvalidated() {
+        AuthTokenCache cache = new AuthTokenCache(10, 300, new SimpleMeterRegistry());
+        put(cache, "token-1", user("alice@example.com", "STUDENT"));
+
+        AuthenticatedUser principal = cache.get("token-1");
+        assertNotNull(principal);
+        assertEquals("alice@example.com", principal.email());
+        assertEquals("STUDENT", principal.role());
+
+        cache.invalidateUser(principal.id());
+        assertNull(cache.get("token-1"));
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvictedWhenFull() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AuthTokenCache cache = new AuthTokenCache(2, 300, registry);
+        put(cache, "a", user("a@example.com", "STUDENT"));
+        put(cache, "b", user("b@example.com", "STUDENT"));
+        cache.get("a"); // touch a so b becomes the eldest
+        put(cache, "c", user("c@example.com", "STUDENT"));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(1.0, registry.get("auth.token.cache.evictions").counter().count());
+    }
+
+    @Test
+    void expiredEntriesAreTreatedAsMisses() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AuthTokenCache cache = new AuthTokenCache(10, 0, registry);
+        put(cache, "token-1", user("alice@example.com", "STUDENT"));
+
+        assertNull(cache.get("token-1"));
+        assertEquals(0, cache.size());
+        assertEquals(1.0, registry.get("auth.token.cache.requests").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void principalLoadedBeforeAnInvalidationIsNotCached() {
+        AuthTokenCache cache = new AuthTokenCache(10, 300, new SimpleMeterRegistry());
+        User user = user("alice@example.com", "STUDENT");
+
+        // The filter read the session, then a logout landed before it could cache the result
+        long loadedAt = cache.generation();
+        cache.invalidateToken("token-1");
+        AuthenticatedUser principal = cache.put("token-1", user, FAR_FUTURE, loadedAt);
+
+        assertEquals("alice@example.com", principal.email());
+        assertNull(cache.get("token-1"));
+    }
+
+    @Test
+    void entryDoesNotOutliveItsSession() throws InterruptedException {
+        AuthTokenCache cache = new AuthTokenCache(10, 300, new SimpleMeterRegistry());
+        cache.put("token-1", user("alice@example.com", "STUDENT"), Instant.now().plusMillis(50), cache.generation());
+        assertNotNull(cache.get("token-1"));
+
+        Thread.sleep(100);
+        assertNull(cache.get("token-1"));
+    }
+}
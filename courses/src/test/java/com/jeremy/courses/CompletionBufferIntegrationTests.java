@@ -0,0 +1,221 @@
+package com.jeremy.courses;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+class CompletionBufferIntegrationTests {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private CourseEnrollmentRepository enrollmentRepository;
+
+    @Autowired
+    private LessonContentStore lessonContentStore;
+
+    @Autowired
+    private ProgressCounters progressCounters;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private User newUser(String role) {
+        return userRepository.save(new User("buffer-" + UUID.randomUUID() + "@example.com", passwordEncoder.encode("secret"), role));
+    }
+
+    private List<Lesson> newLessons(Course course, int count) {
+        List<Lesson> lessons = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lessons.add(new Lesson("Lesson " + i, "Body " + i, null, null, course));
+        }
+        return lessonContentStore.createAll(course.getId(), lessons);
+    }
+
+    private long progressRows(Long userId, Long courseId) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM lesson_progress p JOIN lessons l ON l.id = p.lesson_id "
+                + "WHERE p.user_id = ? AND l.course_id = ? AND p.completed", Long.class, userId, courseId);
+    }
+
+    private int completedCounter(Long userId, Long courseId) {
+        return (int) enrollmentRepository.findEnrolledCourse(userId, courseId).orElseThrow().completedLessons();
+    }
+
+    // A buffer of its own that only flushes when told to, so the test controls timing
+    private CompletionBuffer manualBuffer(SimpleMeterRegistry registry) {
+        return new CompletionBuffer(progressCounters, 3_600_000, 1000, 100_000, registry);
+    }
+
+    @Test
+    void flushWritesEachCompletionOnceAndSkipsStaleOnes() {
+        Course course = courseRepository.save(new Course("Buffered", "Micro-batches", newUser("CREATOR")));
+        List<Lesson> lessons = newLessons(course, 10);
+        List<User> students = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            User student = newUser("STUDENT");
+            enrollmentRepository.save(new CourseEnrollment(student, course));
+            students.add(student);
+        }
+        User notEnrolled = newUser("STUDENT");
+        // Already completed before: must not be counted again
+        progressCounters.complete(students.get(0).getId(), lessons.get(0).getId(), course.getId());
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CompletionBuffer buffer = manualBuffer(registry);
+        for (User student : students) {
+            for (Lesson lesson : lessons) {
+                buffer.submit(student.getId(), lesson.getId(), course.getId());
+                buffer.submit(student.getId(), lesson.getId(), course.getId());
+            }
+        }
+        buffer.submit(notEnrolled.getId(), lessons.get(1).getId(), course.getId());
+        // Deleted after being accepted, before the flush
+        progressCounters.deleteLesson(lessons.get(9).getId(), course.getId());
+
+        assertEquals(31, buffer.size());
+        assertEquals(31.0, registry.get("progress.completions.pending").gauge().value());
+
+        buffer.flush();
+
+        assertEquals(0, buffer.size());
+        assertEquals(1, registry.get("progress.completions.flush").timer().count());
+        for (User student : students) {
+            assertEquals(9, progressRows(student.getId(), course.getId()));
+            assertEquals(9, completedCounter(student.getId(), course.getId()));
+        }
+        assertEquals(0, progressRows(notEnrolled.getId(), course.getId()));
+        buffer.shutdown();
+    }
+
+    @Test
+    void shutdownDrainsTheQueue() {
+        Course course = courseRepository.save(new Course("Buffered", "Drain", newUser("CREATOR")));
+        List<Lesson> lessons = newLessons(course, 5);
+        User student = newUser("STUDENT");
+        enrollmentRepository.save(new CourseEnrollment(student, course));
+
+        CompletionBuffer buffer = manualBuffer(new SimpleMeterRegistry());
+        for (Lesson lesson : lessons.subList(0, 4)) {
+            buffer.submit(student.getId(), lesson.getId(), course.getId());
+        }
+        assertEquals(0, progressRows(student.getId(), course.getId()));
+
+        buffer.shutdown();
+        assertEquals(4, progressRows(student.getId(), course.getId()));
+
+        // Once stopped, completions are refused rather than written inline
+        assertThrows(CompletionBufferFullException.class,
+                () -> buffer.submit(student.getId(), lessons.get(4).getId(), course.getId()));
+        assertEquals(4, progressRows(student.getId(), course.getId()));
+        assertEquals(4, completedCounter(student.getId(), course.getId()));
+    }
+
+    @Test
+    void fullBufferRefusesNewCompletions() {
+        Course course = courseRepository.save(new Course("Buffered", "Full", newUser("CREATOR")));
+        List<Lesson> lessons = newLessons(course, 3);
+        User student = newUser("STUDENT");
+        enrollmentRepository.save(new CourseEnrollment(student, course));
+
+        CompletionBuffer buffer = new CompletionBuffer(progressCounters, 3_600_000, 1000, 2, new SimpleMeterRegistry());
+        buffer.submit(student.getId(), lessons.get(0).getId(), course.getId());
+        buffer.submit(student.getId(), lessons.get(1).getId(), course.getId());
+        assertThrows(CompletionBufferFullException.class,
+                () -> buffer.submit(student.getId(), lessons.get(2).getId(), course.getId()));
+        assertEquals(0, progressRows(student.getId(), course.getId()));
+
+        buffer.flush();
+        buffer.submit(student.getId(), lessons.get(2).getId(), course.getId());
+        buffer.shutdown();
+        assertEquals(3, progressRows(student.getId(), course.getId()));
+    }
+
+    @Test
+    void aCompletionThatCannotBeWrittenIsDroppedWithoutBlockingTheRest() {
+        Course course = courseRepository.save(new Course("Buffered", "Poison", newUser("CREATOR")));
+        List<Lesson> lessons = newLessons(course, 8);
+        User student = newUser("STUDENT");
+        enrollmentRepository.save(new CourseEnrollment(student, course));
+        Long poison = lessons.get(5).getId();
+        ProgressCounters failing = new ProgressCounters(jdbcTemplate, transactionManager, 500) {
+            @Override
+            public int completeAll(List<PendingCompletion> completions) {
+                if (completions.stream().anyMatch(c -> c.lessonId().equals(poison))) {
+                    throw new DataIntegrityViolationException("bad row");
+                }
+                return super.completeAll(completions);
+            }
+        };
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CompletionBuffer buffer = new CompletionBuffer(failing, 3_600_000, 1000, 100_000, registry);
+        for (Lesson lesson : lessons) {
+            buffer.submit(student.getId(), lesson.getId(), course.getId());
+        }
+        buffer.flush();
+
+        assertEquals(0, buffer.size());
+        assertEquals(7, progressRows(student.getId(), course.getId()));
+        assertEquals(7, completedCounter(student.getId(), course.getId()));
+        assertEquals(1.0, registry.get("progress.completions.dropped").counter().count());
+        buffer.shutdown();
+    }
+
+    @Test
+    void completionsWaitInTheQueueWhileTheDatabaseIsUnavailable() {
+        Course course = courseRepository.save(new Course("Buffered", "Outage", newUser("CREATOR")));
+        List<Lesson> lessons = newLessons(course, 4);
+        User student = newUser("STUDENT");
+        enrollmentRepository.save(new CourseEnrollment(student, course));
+        AtomicBoolean down = new AtomicBoolean(true);
+        ProgressCounters flaky = new ProgressCounters(jdbcTemplate, transactionManager, 500) {
+            @Override
+            public int completeAll(List<PendingCompletion> completions) {
+                if (down.get()) {
+                    throw new CannotGetJdbcConnectionException("database unavailable");
+                }
+                return super.completeAll(completions);
+            }
+        };
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CompletionBuffer buffer = new CompletionBuffer(flaky, 3_600_000, 1000, 100_000, registry);
+        for (Lesson lesson : lessons) {
+            buffer.submit(student.getId(), lesson.getId(), course.getId());
+        }
+        buffer.flush();
+        assertEquals(4, buffer.size());
+        assertEquals(0.0, registry.get("progress.completions.dropped").counter().count());
+
+        down.set(false);
+        buffer.flush();
+        assertEquals(0, buffer.size());
+        assertEquals(4, progressRows(student.getId(), course.getId()));
+        buffer.shutdown();
+    }
+}
@@ -0,0 +1,174 @@
+package com.jeremy.courses;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+class ConditionalRequestIntegrationTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private LessonRepository lessonRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private MockMvc mockMvc;
+
+    private String token;
+
+    private Course course;
+
+    @BeforeEach
+    void setup() throws Exception {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+
+        String suffix = UUID.randomUUID().toString();
+        User author = userRepository.save(new User("cond-" + suffix + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        course = courseRepository.save(new Course("Conditional " + suffix, "ETags", author));
+        String response = mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + author.getEmail() + "\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        token = JsonPath.read(response, "$.token");
+    }
+
+    private Long createLesson(String title) throws Exception {
+        String response = mockMvc.perform(multipart("/lessons")
+                        .param("title", title)
+                        .param("content", "Content of " + title)
+                        .param("courseId", String.valueOf(course.getId()))
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return ((Number) JsonPath.read(response, "$.id")).longValue();
+    }
+
+    private String etagOf(String path, Object... vars) throws Exception {
+        String etag = mockMvc.perform(get(path, vars).header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotNull(etag);
+        mockMvc.perform(get(path, vars).header("Authorization", "Bearer " + token).header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        return etag;
+    }
+
+    @Test
+    void lessonListEtagFollowsEveryChange() throws Exception {
+        Long first = createLesson("First");
+        Long second = createLesson("Second");
+        String path = "/lessons/course/{id}";
+
+        String initial = etagOf(path, course.getId());
+
+        mockMvc.perform(post("/lessons/{id}/move", second)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"before\":" + first + "}")
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk());
+        String moved = etagOf(path, course.getId());
+        assertNotEquals(initial, moved);
+
+        mockMvc.perform(delete("/lessons/{id}", first).header("Authorization", "Bearer " + token))
+                .andExpect(status().isNoContent());
+        String deleted = etagOf(path, course.getId());
+        assertNotEquals(moved, deleted);
+
+        // Same data in another representation must not share the validator
+        String withContent = mockMvc.perform(get(path, course.getId()).param("include", "content")
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotEquals(deleted, withContent);
+    }
+
+    @Test
+    void lessonUpdatesAreConditional() throws Exception {
+        Long lessonId = createLesson("Versioned");
+        String etag = etagOf("/lessons/{id}", lessonId);
+        String lastModified = mockMvc.perform(get("/lessons/{id}", lessonId).header("Authorization", "Bearer " + token))
+                .andReturn().getResponse().getHeader("Last-Modified");
+        assertNotNull(lastModified);
+        mockMvc.perform(get("/lessons/{id}", lessonId)
+                        .header("Authorization", "Bearer " + token)
+                        .header("If-Modified-Since", lastModified))
+                .andExpect(status().isNotModified());
+
+        String updatedEtag = mockMvc.perform(multipart(HttpMethod.PUT, "/lessons/{id}", lessonId)
+                        .param("title", "Versioned (edited)")
+                        .param("content", "New content")
+                        .header("If-Match", etag)
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotEquals(etag, updatedEtag);
+        assertEquals(updatedEtag, etagOf("/lessons/{id}", lessonId));
+
+        // A second edit based on the original copy is rejected
+        mockMvc.perform(multipart(HttpMethod.PUT, "/lessons/{id}", lessonId)
+                        .param("title", "Stale edit")
+                        .param("content", "Lost update")
+                        .header("If-Match", etag)
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isPreconditionFailed());
+        assertEquals("Versioned (edited)", lessonRepository.findById(lessonId).orElseThrow().getTitle());
+    }
+
+    @Test
+    void catalogPageRevalidatesOnlyOnChangesToItsOwnRows() throws Exception {
+        // The page after the setup course holds this one; the setup course sits before the cursor
+        Course onPage = courseRepository.save(new Course("Conditional next", "ETags", course.getAuthor()));
+        String after = String.valueOf(course.getId());
+        String etag = mockMvc.perform(get("/courses").param("after", after).param("limit", "5")
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        mockMvc.perform(get("/courses").param("after", after).param("limit", "5").header("Authorization", "Bearer " + token)
+                        .header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        Course outside = courseRepository.findById(course.getId()).orElseThrow();
+        outside.setTitle(outside.getTitle() + " (edited)");
+        courseRepository.save(outside);
+        mockMvc.perform(get("/courses").param("after", after).param("limit", "5").header("Authorization", "Bearer " + token)
+                        .header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        onPage.setTitle(onPage.getTitle() + " (edited)");
+        courseRepository.save(onPage);
+        mockMvc.perform(get("/courses").param("after", after).param("limit", "5").header("Authorization", "Bearer " + token)
+                        .header("If-None-Match", etag))
+                .andExpect(status().isOk());
+    }
+}
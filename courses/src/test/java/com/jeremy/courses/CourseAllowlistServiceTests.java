@@ -0,0 +1,207 @@
+package com.jeremy.courses;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Bloom filter forced on for every restricted course so both the filter and the point query are exercised
+@SpringBootTest(properties = "courses.allowlist.bloom.min-size=1")
+class CourseAllowlistServiceTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private CourseAllowlistService courseAllowlistService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    private Course restrictedCourse(User author, Set<String> emails) {
+        Course course = new Course("Restricted " + UUID.randomUUID(), "Allowlist only", author);
+        course.setRestrictedToAllowList(true);
+        course.setAllowedEmails(emails);
+        return courseRepository.save(course);
+    }
+
+    @Test
+    void membershipIsCheckedWithoutLoadingTheAllowlist() {
+        User author = userRepository.findByEmail("admin@example.com");
+        Set<String> emails = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            emails.add("member" + i + "@corp.example.com");
+        }
+        Course course = restrictedCourse(author, emails);
+
+        assertTrue(courseAllowlistService.isAllowed(course, "member7@corp.example.com"));
+        assertTrue(courseAllowlistService.isAllowed(course, "MEMBER199@corp.example.com"));
+        assertFalse(courseAllowlistService.isAllowed(course, "outsider@corp.example.com"));
+        assertFalse(courseAllowlistService.isAllowed(course, null));
+    }
+
+    private User newCreator() {
+        return userRepository.save(new User("access-" + UUID.randomUUID() + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+    }
+
+    private String login(User author) throws Exception {
+        String response = mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + author.getEmail() + "\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.token");
+    }
+
+    @Test
+    void accessEndpointPagesThroughAllowlistInEmailOrder() throws Exception {
+        User author = newCreator();
+        String token = login(author);
+        Set<String> emails = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            emails.add("user" + i + "@example.com");
+        }
+        Course course = restrictedCourse(author, emails);
+
+        List<String> seen = new ArrayList<>();
+        String after = null;
+        do {
+            var request = get("/courses/{id}/access", course.getId())
+                    .param("limit", "2")
+                    .header("Authorization", "Bearer " + token);
+            if (after != null) request.param("after", after);
+            MvcResult result = mockMvc.perform(request).andExpect(status().isOk()).andReturn();
+
+            String body = result.getResponse().getContentAsString();
+            assertEquals(5, ((Number) JsonPath.read(body, "$.allowedEmailCount")).intValue());
+            seen.addAll(JsonPath.read(body, "$.allowedEmails"));
+            after = result.getResponse().getHeader("X-Next-Cursor");
+        } while (after != null);
+
+        assertEquals(List.of("user0@example.com", "user1@example.com", "user2@example.com",
+                "user3@example.com", "user4@example.com"), seen);
+    }
+
+    @Test
+    void createCourseWritesTheInitialAllowlist() throws Exception {
+        User author = newCreator();
+        String token = login(author);
+        String response = mockMvc.perform(post("/courses")
+                        .header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"Created " + UUID.randomUUID() + "\",\"description\":\"Invite only\","
+                                + "\"restrictedToAllowList\":true,\"allowedEmails\":[\" Invited@Example.com \",\"not-an-email\"]}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertFalse(response.contains("allowedEmails"));
+        Course course = courseRepository.findById(((Number) JsonPath.read(response, "$.id")).longValue()).orElseThrow();
+
+        assertEquals(1, courseRepository.countAllowedEmails(course.getId()));
+        assertTrue(courseAllowlistService.isAllowed(course, "invited@example.com"));
+        assertFalse(courseAllowlistService.isAllowed(course, "outsider@example.com"));
+    }
+
+    @Test
+    void csvImportOnlyWritesTheDifference() throws Exception {
+        User author = newCreator();
+        String token = login(author);
+        Set<String> emails = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            emails.add("bulk" + i + "@example.com");
+        }
+        Course course = restrictedCourse(author, emails);
+
+        // Same list with bulk0 swapped for a new address, plus a header, a duplicate, mixed case and blank cells
+        StringBuilder csv = new StringBuilder("email,name\n,,;\"\" ; \n");
+        for (int i = 1; i < 1000; i++) {
+            csv.append("BULK").append(i).append("@example.com,Someone\n");
+        }
+        csv.append("\"newcomer@example.com\"\nnewcomer@example.com\n");
+
+        String body = mockMvc.perform(put("/courses/{id}/access/emails", course.getId())
+                        .contentType("text/csv")
+                        .content(csv.toString())
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals(1, ((Number) JsonPath.read(body, "$.added")).intValue());
+        assertEquals(1, ((Number) JsonPath.read(body, "$.removed")).intValue());
+        assertEquals(1000, ((Number) JsonPath.read(body, "$.allowedEmailCount")).intValue());
+        // The header's two cells and the 999 names; blank cells don't count
+        assertEquals(1001, ((Number) JsonPath.read(body, "$.rejected")).intValue());
+        assertTrue(courseAllowlistService.isAllowed(course, "newcomer@example.com"));
+        assertFalse(courseAllowlistService.isAllowed(course, "bulk0@example.com"));
+        assertTrue(courseRepository.isEmailAllowListed(course.getId(), "bulk999@example.com"));
+    }
+
+    @Test
+    void emailAddedWhileTheFilterIsRebuiltIsNotLost() {
+        User author = userRepository.save(new User("bloom-race-" + UUID.randomUUID() + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        Course course = restrictedCourse(author, Set.of("early@example.com"));
+        String late = "late-" + UUID.randomUUID() + "@example.com";
+
+        // The allowlist changes (and the filter is invalidated) after the rebuild has read the old list
+        CourseAllowlistService[] service = new CourseAllowlistService[1];
+        boolean[] changed = {false};
+        CourseRepository racing = (CourseRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CourseRepository.class}, (proxy, method, args) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(courseRepository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (method.getName().equals("findAllowedEmails") && !changed[0]) {
+                        changed[0] = true;
+                        jdbcTemplate.update("INSERT INTO course_allowed_emails (course_id, email) VALUES (?, ?)", course.getId(), late);
+                        service[0].invalidate(course.getId());
+                    }
+                    return result;
+                });
+        service[0] = new CourseAllowlistService(racing, true, 1, 0.01, 60);
+
+        assertTrue(service[0].isAllowed(course, late));
+        assertTrue(service[0].isAllowed(course, late));
+        assertTrue(service[0].isAllowed(course, "early@example.com"));
+    }
+}
@@ -37,4 +37,21 @@ class CourseAllowlistTests {
 
         assertFalse(course.isEmailAllowed("anyone@example.com"));
     }
+
+    @Test
+    void bloomFilterHasNoFalseNegativesAndFewFalsePositives() {
+        CourseAllowlistService.BloomFilter filter = new CourseAllowlistService.BloomFilter(20_000, 0.01);
+        for (int i = 0; i < 20_000; i++) {
+            filter.put("member" + i + "@example.com");
+        }
+
+        for (int i = 0; i < 20_000; i++) {
+            assertTrue(filter.mightContain("member" + i + "@example.com"));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 20_000; i++) {
+            if (filter.mightContain("outsider" + i + "@example.com")) falsePositives++;
+        }
+        assertTrue(falsePositives < 20_000 * 0.02, "false positives: " + falsePositives);
+    }
 }
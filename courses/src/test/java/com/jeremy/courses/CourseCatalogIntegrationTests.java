@@ -0,0 +1,268 @@
+package com.jeremy.courses;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+class CourseCatalogIntegrationTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private LessonRepository lessonRepository;
+
+    @Autowired
+    private CourseEnrollmentRepository enrollmentRepository;
+
+    @Autowired
+    private PublicCatalogSnapshot publicCatalogSnapshot;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    private String login(String email) throws Exception {
+        String response = mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + email + "\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.token");
+    }
+
+    // Walks every page with the given page size and returns all course ids seen
+    private List<Long> allVisibleCourseIds(String token, int limit) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        String after = null;
+        do {
+            var request = get("/courses").param("limit", String.valueOf(limit));
+            if (after != null) request.param("after", after);
+            if (token != null) request.header("Authorization", "Bearer " + token);
+            MvcResult result = mockMvc.perform(request).andExpect(status().isOk()).andReturn();
+
+            List<Number> pageIds = JsonPath.read(result.getResponse().getContentAsString(), "$[*].id");
+            assertTrue(pageIds.size() <= limit);
+            pageIds.forEach(id -> ids.add(id.longValue()));
+            after = result.getResponse().getHeader("X-Next-Cursor");
+        } while (after != null);
+        return ids;
+    }
+
+    @Test
+    void catalogAppliesVisibilityRulesAcrossPages() throws Exception {
+        String suffix = UUID.randomUUID().toString();
+        User author = userRepository.save(new User("author-" + suffix + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        User allowed = userRepository.save(new User("allowed-" + suffix + "@example.com", passwordEncoder.encode("secret"), "STUDENT"));
+
+        Course open = courseRepository.save(new Course("Open " + suffix, "Anyone", author));
+        Course restricted = new Course("Restricted " + suffix, "Allowlist only", author);
+        restricted.setRestrictedToAllowList(true);
+        restricted.setAllowedEmails(Set.of(allowed.getEmail()));
+        restricted = courseRepository.save(restricted);
+
+        List<Long> anonymous = allVisibleCourseIds(null, 2);
+        assertTrue(anonymous.contains(open.getId()));
+        assertFalse(anonymous.contains(restricted.getId()));
+        assertEquals(anonymous.size(), Set.copyOf(anonymous).size(), "pages must not overlap");
+
+        List<Long> forAllowed = allVisibleCourseIds(login(allowed.getEmail()), 2);
+        assertTrue(forAllowed.contains(restricted.getId()));
+
+        List<Long> forAuthor = allVisibleCourseIds(login(author.getEmail()), 3);
+        assertTrue(forAuthor.contains(restricted.getId()));
+    }
+
+    @Test
+    void creatorSeesOnlyOwnCoursesAndLessons() throws Exception {
+        String suffix = UUID.randomUUID().toString();
+        User author = userRepository.save(new User("mine-" + suffix + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        User other = userRepository.save(new User("other-" + suffix + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+
+        List<Long> ownIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Course course = courseRepository.save(new Course("Mine " + i + " " + suffix, "Own course", author));
+            ownIds.add(course.getId());
+            lessonRepository.save(new Lesson("Lesson " + i, "Content", null, null, course));
+        }
+        Course foreign = courseRepository.save(new Course("Other " + suffix, "Someone else's", other));
+        lessonRepository.save(new Lesson("Foreign lesson", "Content", null, null, foreign));
+
+        String token = login(author.getEmail());
+        MvcResult first = mockMvc.perform(get("/courses/my-created").param("limit", "2")
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk()).andReturn();
+        String cursor = first.getResponse().getHeader("X-Next-Cursor");
+        assertNotNull(cursor);
+        MvcResult second = mockMvc.perform(get("/courses/my-created").param("limit", "2").param("after", cursor)
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk()).andReturn();
+        assertNull(second.getResponse().getHeader("X-Next-Cursor"));
+
+        List<Long> seen = new ArrayList<>();
+        for (MvcResult result : List.of(first, second)) {
+            List<Number> ids = JsonPath.read(result.getResponse().getContentAsString(), "$[*].id");
+            ids.forEach(id -> seen.add(id.longValue()));
+        }
+        assertEquals(ownIds, seen);
+
+        String lessons = mockMvc.perform(get("/lessons").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        List<String> titles = JsonPath.read(lessons, "$[*].title");
+        assertEquals(3, titles.size());
+        assertFalse(titles.contains("Foreign lesson"));
+    }
+
+    @Test
+    void accessibleLessonsArePagedAndFilterableByCourse() throws Exception {
+        String suffix = UUID.randomUUID().toString();
+        User author = userRepository.save(new User("paged-" + suffix + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        User student = userRepository.save(new User("paged-student-" + suffix + "@example.com", passwordEncoder.encode("secret"), "STUDENT"));
+        Course enrolled = courseRepository.save(new Course("Enrolled " + suffix, "In", author));
+        Course other = courseRepository.save(new Course("Other " + suffix, "Out", author));
+        List<Long> enrolledLessonIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            enrolledLessonIds.add(lessonRepository.save(new Lesson("In " + i, "Content", null, null, enrolled)).getId());
+            lessonRepository.save(new Lesson("Out " + i, "Content", null, null, other));
+        }
+        enrollmentRepository.save(new CourseEnrollment(student, enrolled));
+
+        String token = login(student.getEmail());
+        List<Long> seen = new ArrayList<>();
+        String after = null;
+        do {
+            var request = get("/lessons").param("limit", "2").header("Authorization", "Bearer " + token);
+            if (after != null) request.param("after", after);
+            MvcResult result = mockMvc.perform(request).andExpect(status().isOk()).andReturn();
+            List<Number> ids = JsonPath.read(result.getResponse().getContentAsString(), "$[*].id");
+            ids.forEach(id -> seen.add(id.longValue()));
+            after = result.getResponse().getHeader("X-Next-Cursor");
+        } while (after != null);
+        assertEquals(enrolledLessonIds, seen);
+
+        // The author sees both courses, narrowed down by courseId; bodies only when asked for
+        String authorToken = login(author.getEmail());
+        String filtered = mockMvc.perform(get("/lessons").param("courseId", String.valueOf(other.getId()))
+                        .header("Authorization", "Bearer " + authorToken))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        assertEquals(List.of("Out 0", "Out 1", "Out 2"), JsonPath.read(filtered, "$[*].title"));
+        assertEquals(List.of(7, 7, 7), JsonPath.read(filtered, "$[*].contentLength"));
+        assertFalse(filtered.contains("\"content\""));
+        String withContent = mockMvc.perform(get("/lessons").param("courseId", String.valueOf(other.getId()))
+                        .param("include", "content")
+                        .header("Authorization", "Bearer " + authorToken))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        assertEquals(List.of("Content", "Content", "Content"), JsonPath.read(withContent, "$[*].content"));
+    }
+
+    @Test
+    void lessonListsUseProjections() throws Exception {
+        String suffix = UUID.randomUUID().toString();
+        User author = userRepository.save(new User("proj-" + suffix + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        User student = userRepository.save(new User("proj-student-" + suffix + "@example.com", passwordEncoder.encode("secret"), "STUDENT"));
+        Course course = courseRepository.save(new Course("Projections " + suffix, "Lean lists", author));
+        for (int i = 3; i >= 1; i--) {
+            Lesson lesson = new Lesson("Lesson " + i, "Secret content " + i, null, null, course);
+            lesson.setOrderIndex(i);
+            lessonRepository.save(lesson);
+        }
+
+        // Not enrolled: outline only, in course order with positions
+        String outline = mockMvc.perform(get("/lessons/course/{id}", course.getId())
+                        .header("Authorization", "Bearer " + login(student.getEmail())))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        assertEquals(List.of("Lesson 1", "Lesson 2", "Lesson 3"), JsonPath.read(outline, "$[*].title"));
+        assertEquals(List.of(1, 2, 3), JsonPath.read(outline, "$[*].position"));
+        assertFalse(outline.contains("Secret content"));
+        mockMvc.perform(get("/lessons/course/{id}", course.getId()).param("include", "content")
+                        .header("Authorization", "Bearer " + login(student.getEmail())))
+                .andExpect(status().isForbidden());
+
+        // Author: summaries by default, without the content body
+        String authorToken = login(author.getEmail());
+        String summaries = mockMvc.perform(get("/lessons/course/{id}", course.getId())
+                        .header("Authorization", "Bearer " + authorToken))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        assertEquals(List.of("Lesson 1", "Lesson 2", "Lesson 3"), JsonPath.read(summaries, "$[*].title"));
+        assertEquals("Secret content 1".length(), (int) JsonPath.read(summaries, "$[0].contentLength"));
+        assertEquals(false, JsonPath.read(summaries, "$[0].hasPdf"));
+        assertFalse(summaries.contains("Secret content"));
+
+        // Full lessons on request, but only the course id rather than the course and its author
+        String details = mockMvc.perform(get("/lessons/course/{id}", course.getId()).param("include", "content")
+                        .header("Authorization", "Bearer " + authorToken))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        assertEquals("Secret content 1", JsonPath.read(details, "$[0].content"));
+        assertEquals(course.getId().intValue(), ((Number) JsonPath.read(details, "$[0].courseId")).intValue());
+        assertFalse(details.contains("\"course\""));
+        assertFalse(details.contains(author.getEmail()));
+    }
+
+    @Test
+    void anonymousLandingPageIsServedWithEtag() throws Exception {
+        String etag = mockMvc.perform(get("/courses"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotNull(etag);
+
+        mockMvc.perform(get("/courses").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        // Edit a course that is on the first public page so its serialized form changes
+        Number firstId = JsonPath.read(new String(publicCatalogSnapshot.get().body()), "$[0].id");
+        Course first = courseRepository.findById(firstId.longValue()).orElseThrow();
+        String originalDescription = first.getDescription();
+        first.setDescription(originalDescription + " (edited)");
+        first = courseRepository.save(first);
+        publicCatalogSnapshot.markStale();
+
+        // The rebuild runs in the background; wait for the new version to be published
+        String changed = etag;
+        for (int i = 0; i < 50 && changed.equals(etag); i++) {
+            Thread.sleep(100);
+            changed = publicCatalogSnapshot.get().etag();
+        }
+        try {
+            assertNotEquals(etag, changed);
+            mockMvc.perform(get("/courses").header("If-None-Match", etag))
+                    .andExpect(status().isOk());
+        } finally {
+            first.setDescription(originalDescription);
+            courseRepository.save(first);
+            publicCatalogSnapshot.markStale();
+        }
+    }
+}
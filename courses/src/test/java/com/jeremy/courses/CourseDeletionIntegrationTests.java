@@ -0,0 +1,169 @@
+package com.jeremy.courses;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Small batch size so every table is cleared over several chunks
+@SpringBootTest(properties = "courses.deletion.batch-size=2")
+class CourseDeletionIntegrationTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private LessonRepository lessonRepository;
+
+    @Autowired
+    private CourseEnrollmentRepository enrollmentRepository;
+
+    @Autowired
+    private LessonProgressRepository progressRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EnrollmentService enrollmentService;
+
+    @Autowired
+    private ProgressCounters progressCounters;
+
+    @Autowired
+    private CourseDeletionService courseDeletionService;
+
+    @Autowired
+    private CourseDeletionJobRepository jobRepository;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    private String login(User user) throws Exception {
+        String response = mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + user.getEmail() + "\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.token");
+    }
+
+    private long count(String sql, Long courseId) {
+        return jdbcTemplate.queryForObject(sql, Long.class, courseId);
+    }
+
+    @Test
+    void deletionHidesCourseImmediatelyAndPurgesItInTheBackground() throws Exception {
+        String suffix = UUID.randomUUID().toString();
+        User author = userRepository.save(new User("delete-" + suffix + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        Course course = new Course("Doomed " + suffix, "Going away", author);
+        course.setRestrictedToAllowList(true);
+        course.setAllowedEmails(Set.of("a@example.com", "b@example.com", "c@example.com"));
+        course = courseRepository.save(course);
+
+        for (int i = 0; i < 5; i++) {
+            User student = userRepository.save(new User("student-" + i + "-" + suffix + "@example.com", "hash", "STUDENT"));
+            enrollmentRepository.save(new CourseEnrollment(student, course));
+            Lesson lesson = lessonRepository.save(new Lesson("Lesson " + i, "Content", null, null, course));
+            LessonProgress progress = new LessonProgress(student, lesson);
+            progress.setCompleted(true);
+            progressRepository.save(progress);
+        }
+
+        String token = login(author);
+        String response = mockMvc.perform(delete("/courses/{id}", course.getId()).header("Authorization", "Bearer " + token))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse().getContentAsString();
+        Number jobId = JsonPath.read(response, "$.jobId");
+
+        // Hidden right away, and a second delete finds nothing
+        assertTrue(courseRepository.findById(course.getId()).isEmpty());
+        mockMvc.perform(delete("/courses/{id}", course.getId()).header("Authorization", "Bearer " + token))
+                .andExpect(status().isNotFound());
+
+        String status = null;
+        for (int i = 0; i < 100 && !"COMPLETED".equals(status); i++) {
+            Thread.sleep(100);
+            String job = mockMvc.perform(get("/courses/deletion-jobs/{id}", jobId).header("Authorization", "Bearer " + token))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            status = JsonPath.read(job, "$.status");
+        }
+        assertEquals("COMPLETED", status);
+
+        Long courseId = course.getId();
+        assertEquals(0, count("SELECT count(*) FROM courses WHERE id = ?", courseId));
+        assertEquals(0, count("SELECT count(*) FROM lessons WHERE course_id = ?", courseId));
+        assertEquals(0, count("SELECT count(*) FROM course_enrollments WHERE course_id = ?", courseId));
+        assertEquals(0, count("SELECT count(*) FROM course_allowed_emails WHERE course_id = ?", courseId));
+        assertEquals(0, count("SELECT count(*) FROM lesson_progress lp JOIN lessons l ON l.id = lp.lesson_id WHERE l.course_id = ?", courseId));
+    }
+
+    @Test
+    void flaggedCourseRefusesNewRowsAndFailedJobIsRetried() throws Exception {
+        String suffix = UUID.randomUUID().toString();
+        User author = userRepository.save(new User("delete-retry-" + suffix + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        User student = userRepository.save(new User("student-retry-" + suffix + "@example.com", "hash", "STUDENT"));
+        User latecomer = userRepository.save(new User("latecomer-" + suffix + "@example.com", "hash", "STUDENT"));
+        Course course = courseRepository.save(new Course("Retried " + suffix, "Going away", author));
+        Lesson lesson = lessonRepository.save(new Lesson("Lesson", "Content", null, null, course));
+        enrollmentRepository.save(new CourseEnrollment(student, course));
+        Long courseId = course.getId();
+
+        // Flagged, as by a delete request whose first run then failed
+        courseRepository.markDeleted(courseId);
+        CourseDeletionJob job = jobRepository.save(new CourseDeletionJob(courseId, author.getId()));
+        jdbcTemplate.update("UPDATE course_deletion_jobs SET status = 'FAILED', error = 'boom', "
+                + "updated_at = now() - interval '1 day' WHERE id = ?", job.getId());
+
+        assertTrue(enrollmentService.enroll(latecomer.getId(), courseId).isEmpty());
+        assertEquals(0, enrollmentService.enrollAll(courseId, List.of(latecomer.getId())).enrolled());
+        assertEquals(ProgressCounters.Outcome.NOT_ENROLLED,
+                progressCounters.complete(student.getId(), lesson.getId(), courseId).outcome());
+        assertEquals(0, progressCounters.completeAll(List.of(new ProgressCounters.PendingCompletion(
+                student.getId(), lesson.getId(), courseId, LocalDateTime.now()))));
+        assertEquals(0, count("SELECT count(*) FROM lesson_progress WHERE lesson_id = ?", lesson.getId()));
+
+        courseDeletionService.resumeRunnableJobs();
+        String status = null;
+        for (int i = 0; i < 100 && !"COMPLETED".equals(status); i++) {
+            Thread.sleep(100);
+            status = jobRepository.findById(job.getId()).orElseThrow().getStatus();
+        }
+        assertEquals("COMPLETED", status);
+        assertEquals(0, count("SELECT count(*) FROM courses WHERE id = ?", courseId));
+        assertEquals(0, count("SELECT count(*) FROM course_enrollments WHERE course_id = ?", courseId));
+    }
+}
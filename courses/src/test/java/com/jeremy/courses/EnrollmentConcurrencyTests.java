@@ -0,0 +1,148 @@
+package com.jeremy.courses;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+class EnrollmentConcurrencyTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private CourseEnrollmentRepository enrollmentRepository;
+
+    @Autowired
+    private AuthTokenService authTokenService;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    // Tokens are issued directly: hashing a thousand passwords through /auth/login is not what's under test
+    private List<User> newUsers(int count, String role) {
+        String password = passwordEncoder.encode("secret");
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            users.add(new User("enroll-" + UUID.randomUUID() + "@example.com", password, role));
+        }
+        return userRepository.saveAll(users);
+    }
+
+    private long enrollmentCount(Long courseId) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM course_enrollments WHERE course_id = ?", Long.class, courseId);
+    }
+
+    @Test
+    void thousandConcurrentEnrollsToTheSameCourse() throws Exception {
+        User author = newUsers(1, "CREATOR").get(0);
+        Course course = courseRepository.save(new Course("Launch", "Enrollment spike", author));
+        List<User> students = newUsers(500, "STUDENT");
+
+        // Every student submits twice, all 1000 requests at once
+        List<Callable<Integer>> requests = new ArrayList<>();
+        for (User student : students) {
+            String token = authTokenService.issueToken(student, "load-test");
+            for (int submit = 0; submit < 2; submit++) {
+                requests.add(() -> mockMvc.perform(post("/enrollments/courses/{id}", course.getId())
+                                .header("Authorization", "Bearer " + token))
+                        .andReturn().getResponse().getStatus());
+            }
+        }
+        Collections.shuffle(requests);
+        ExecutorService pool = Executors.newFixedThreadPool(64);
+        List<Integer> statuses = new ArrayList<>();
+        try {
+            for (Future<Integer> future : pool.invokeAll(requests)) {
+                statuses.add(future.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        Map<Integer, Long> byStatus = statuses.stream().collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        assertEquals(Map.of(201, 500L, 409, 500L), byStatus);
+        assertEquals(500, enrollmentCount(course.getId()));
+    }
+
+    @Test
+    void adminBulkEnrollsInChunksAndSkipsExistingAndUnknownUsers() throws Exception {
+        User admin = newUsers(1, "ADMIN").get(0);
+        Course course = courseRepository.save(new Course("Cohort", "Bulk enrollment", admin));
+        List<User> students = newUsers(2500, "STUDENT");
+        for (User student : students.subList(0, 100)) {
+            enrollmentRepository.save(new CourseEnrollment(student, course));
+        }
+
+        List<Long> ids = new ArrayList<>(students.stream().map(User::getId).toList());
+        ids.addAll(students.subList(0, 50).stream().map(User::getId).toList());
+        ids.add(-1L);
+        ids.add(-2L);
+        String body = "{\"userIds\":" + ids + "}";
+
+        mockMvc.perform(post("/enrollments/courses/{id}/bulk", course.getId())
+                        .header("Authorization", "Bearer " + authTokenService.issueToken(admin, "test"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.requested").value(2502))
+                .andExpect(jsonPath("$.enrolled").value(2400))
+                .andExpect(jsonPath("$.alreadyEnrolled").value(100))
+                .andExpect(jsonPath("$.unknownUsers").value(2));
+        assertEquals(2500, enrollmentCount(course.getId()));
+    }
+
+    @Test
+    void studentsCannotBulkEnroll() throws Exception {
+        User student = newUsers(1, "STUDENT").get(0);
+        Course course = courseRepository.save(new Course("Cohort", "Bulk enrollment", newUsers(1, "CREATOR").get(0)));
+
+        mockMvc.perform(post("/enrollments/courses/{id}/bulk", course.getId())
+                        .header("Authorization", "Bearer " + authTokenService.issueToken(student, "test"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userIds\":[" + student.getId() + "]}"))
+                .andExpect(status().isForbidden());
+        assertEquals(0, enrollmentCount(course.getId()));
+    }
+}
@@ -0,0 +1,214 @@
+package com.jeremy.courses;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "courses.lessons.compression.enabled=true",
+        "courses.lessons.compression.threshold-bytes=1024"
+})
+class LessonContentCompressionTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private LessonRepository lessonRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private LessonContentStore lessonContentStore;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    private String login(User user) throws Exception {
+        String response = mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + user.getEmail() + "\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.token");
+    }
+
+    private static String uniqueWord() {
+        return "zq" + UUID.randomUUID().toString().replaceAll("[^a-f]", "");
+    }
+
+    private boolean storedCompressed(Long lessonId) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT content IS NULL AND content_gzip IS NOT NULL FROM lessons WHERE id = ?", Boolean.class, lessonId));
+    }
+
+    private List<Map<String, Object>> search(String q, String token) throws Exception {
+        String body = mockMvc.perform(get("/search").param("q", q).header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        return JsonPath.read(body, "$.results");
+    }
+
+    @Test
+    void largeBodiesAreStoredCompressedAndServedTransparently() throws Exception {
+        String word = uniqueWord();
+        String suffix = UUID.randomUUID().toString();
+        User author = userRepository.save(new User("gzip-" + suffix + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        Course course = courseRepository.save(new Course("Compressed " + suffix, "Big notes", author));
+        String token = login(author);
+        String content = "Transcript line about " + word + ".\n" + "Lecture notes that repeat a lot. ".repeat(500);
+
+        String created = mockMvc.perform(multipart("/lessons")
+                        .param("title", "Long lecture")
+                        .param("content", content)
+                        .param("courseId", String.valueOf(course.getId()))
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        Long lessonId = ((Number) JsonPath.read(created, "$.id")).longValue();
+        assertTrue(storedCompressed(lessonId));
+
+        String lesson = mockMvc.perform(get("/lessons/{id}", lessonId).header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        assertEquals(content, JsonPath.read(lesson, "$.content"));
+
+        String summaries = mockMvc.perform(get("/lessons/course/{id}", course.getId()).header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        assertEquals(content.length(), (int) JsonPath.read(summaries, "$[0].contentLength"));
+        String details = mockMvc.perform(get("/lessons/course/{id}", course.getId()).param("include", "content")
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        assertEquals(content, JsonPath.read(details, "$[0].content"));
+
+        // Sent as stored to gzip-capable clients, inflated for the rest
+        MvcResult gzipped = mockMvc.perform(get("/lessons/{id}/content", lessonId)
+                        .header("Accept-Encoding", "br, gzip")
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk()).andReturn();
+        assertEquals("gzip", gzipped.getResponse().getHeader("Content-Encoding"));
+        byte[] body = gzipped.getResponse().getContentAsByteArray();
+        assertTrue(body.length < content.length());
+        try (InputStream in = LessonContentStore.inflating(body)) {
+            assertEquals(content, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        MvcResult plain = mockMvc.perform(get("/lessons/{id}/content", lessonId)
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk()).andReturn();
+        assertNull(plain.getResponse().getHeader("Content-Encoding"));
+        assertEquals(content, plain.getResponse().getContentAsString(StandardCharsets.UTF_8));
+
+        // The body is still searchable
+        List<Map<String, Object>> hits = search(word, token);
+        assertEquals(1, hits.size());
+        assertEquals(lessonId.intValue(), ((Number) hits.get(0).get("id")).intValue());
+
+        // Short edits are stored plain again, and the old compressed words drop out of the index
+        mockMvc.perform(multipart(HttpMethod.PUT, "/lessons/{id}", lessonId)
+                        .param("title", "Long lecture")
+                        .param("content", "Short now")
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk());
+        assertFalse(storedCompressed(lessonId));
+        assertTrue(search(word, token).isEmpty());
+    }
+
+    @Test
+    void migrationCompressesExistingRowsAndReports() throws Exception {
+        String word = uniqueWord();
+        String suffix = UUID.randomUUID().toString();
+        User admin = userRepository.save(new User("gzip-admin-" + suffix + "@example.com", passwordEncoder.encode("secret"), "ADMIN"));
+        Course course = courseRepository.save(new Course("Legacy " + suffix, "Plain rows", admin));
+        // Saved through the repository, so stored plain like rows written before compression existed
+        String content = word + " " + "Old pasted notes. ".repeat(400);
+        Lesson lesson = lessonRepository.save(new Lesson("Legacy lesson", content, null, null, course));
+        assertFalse(storedCompressed(lesson.getId()));
+
+        String token = login(admin);
+        String started = mockMvc.perform(post("/lessons/content-compression").header("Authorization", "Bearer " + token))
+                .andExpect(status().isAccepted()).andReturn().getResponse().getContentAsString();
+        int jobId = JsonPath.read(started, "$.jobId");
+
+        String report = null;
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            report = mockMvc.perform(get("/lessons/content-compression/{id}", jobId).header("Authorization", "Bearer " + token))
+                    .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+            if (!List.of("PENDING", "RUNNING").contains(JsonPath.<String>read(report, "$.status"))) {
+                break;
+            }
+            Thread.sleep(50);
+        }
+        assertEquals("COMPLETED", JsonPath.read(report, "$.status"));
+        assertTrue(((Number) JsonPath.read(report, "$.lessonsCompressed")).intValue() >= 1);
+        assertTrue(((Number) JsonPath.read(report, "$.contentBytesAfter")).longValue()
+                < ((Number) JsonPath.read(report, "$.contentBytesBefore")).longValue());
+        assertNotNull(JsonPath.read(report, "$.tableBytesBefore"));
+        assertNotNull(JsonPath.read(report, "$.tableBytesAfter"));
+
+        assertTrue(storedCompressed(lesson.getId()));
+        // Loading the entity leaves the compressed bytes alone; the endpoint inflates them
+        Lesson loaded = lessonRepository.findById(lesson.getId()).orElseThrow();
+        assertTrue(loaded.hasCompressedContent());
+        assertNull(loaded.getContent());
+        String served = mockMvc.perform(get("/lessons/{id}", lesson.getId()).header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        assertEquals(content, JsonPath.read(served, "$.content"));
+        assertEquals(1, search(word, token).size());
+    }
+
+    @Test
+    void editOfALessonLoadedBeforeItWasCompressedFails() throws Exception {
+        String suffix = UUID.randomUUID().toString();
+        User admin = userRepository.save(new User("gzip-stale-" + suffix + "@example.com", passwordEncoder.encode("secret"), "ADMIN"));
+        Course course = courseRepository.save(new Course("Stale " + suffix, "Plain rows", admin));
+        String content = "Original notes. ".repeat(400);
+        Lesson saved = lessonRepository.save(new Lesson("Stale lesson", content, null, null, course));
+        Lesson loadedBeforeCompression = lessonRepository.findById(saved.getId()).orElseThrow();
+
+        lessonContentStore.compressBatch(saved.getId() - 1);
+        assertTrue(storedCompressed(saved.getId()));
+
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> lessonContentStore.update(loadedBeforeCompression, "Edited notes"));
+        String token = login(admin);
+        String served = mockMvc.perform(get("/lessons/{id}/content", saved.getId()).header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertEquals(content, served);
+    }
+}
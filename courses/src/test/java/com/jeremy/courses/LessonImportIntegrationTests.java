@@ -0,0 +1,162 @@
+package com.jeremy.courses;
+
+import com.jayway.jsonpath.JsonPath;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class LessonImportIntegrationTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private LessonRepository lessonRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    private String login(String email) throws Exception {
+        String response = mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + email + "\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.token");
+    }
+
+    private Course newCourse(User author) {
+        return courseRepository.save(new Course("Import " + UUID.randomUUID(), "Bulk import", author));
+    }
+
+    private User newCreator() {
+        return userRepository.save(new User("import-" + UUID.randomUUID() + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+    }
+
+    @Test
+    void importsFiveHundredLessonsInOrderWithBatchedInserts() throws Exception {
+        User author = newCreator();
+        Course course = newCourse(author);
+        String token = login(author.getEmail());
+        String ndjson = IntStream.range(0, 500)
+                .mapToObj(i -> "{\"title\":\"Lesson " + i + "\",\"content\":\"Body " + i + "\""
+                        + (i % 10 == 0 ? ",\"pdfUrl\":\"https://files.example.com/" + i + ".pdf\"" : "") + "}")
+                .collect(Collectors.joining("\n"));
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        mockMvc.perform(post("/lessons/course/{courseId}/import", course.getId())
+                        .header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received").value(500))
+                .andExpect(jsonPath("$.imported").value(500))
+                .andExpect(jsonPath("$.rejected").value(0));
+
+        // Per chunk: the ordering lock and max lookup plus one batched insert, not one insert per lesson
+        assertTrue(statistics.getPrepareStatementCount() < 50, "statements: " + statistics.getPrepareStatementCount());
+
+        List<Lesson> lessons = lessonRepository.findByCourseIdOrderByOrderIndexAscIdAsc(course.getId());
+        assertEquals(500, lessons.size());
+        for (int i = 0; i < lessons.size(); i++) {
+            assertEquals("Lesson " + i, lessons.get(i).getTitle());
+            assertEquals((i + 1) * LessonOrderingService.GAP, lessons.get(i).getOrderIndex());
+        }
+        assertEquals("https://files.example.com/0.pdf", lessons.get(0).getPdfUrl());
+    }
+
+    @Test
+    void skipsInvalidLessonsAndAppendsAfterExistingOnes() throws Exception {
+        User author = newCreator();
+        Course course = newCourse(author);
+        String token = login(author.getEmail());
+        mockMvc.perform(post("/lessons/course/{courseId}/import", course.getId())
+                        .header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"title\":\"First\"}]"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/lessons/course/{courseId}/import", course.getId())
+                        .header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"title\":\"Second\"},{\"content\":\"no title\"},{\"title\":\"Third\",\"videoUrl\":\"https://v.example.com/3\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received").value(3))
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.problems[0]").value("lesson 2: title is required"));
+
+        List<String> titles = lessonRepository.findByCourseIdOrderByOrderIndexAscIdAsc(course.getId()).stream()
+                .map(Lesson::getTitle)
+                .toList();
+        assertEquals(List.of("First", "Second", "Third"), titles);
+    }
+
+    @Test
+    void malformedDocumentKeepsLessonsReadBeforeTheError() throws Exception {
+        User author = newCreator();
+        Course course = newCourse(author);
+        String token = login(author.getEmail());
+
+        mockMvc.perform(post("/lessons/course/{courseId}/import", course.getId())
+                        .header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"title\":\"Kept\"}\n{\"title\": oops}\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.imported").value(1));
+
+        assertEquals(1, lessonRepository.countByCourseId(course.getId()));
+    }
+
+    @Test
+    void otherCreatorsCannotImport() throws Exception {
+        Course course = newCourse(newCreator());
+        String token = login(newCreator().getEmail());
+
+        mockMvc.perform(post("/lessons/course/{courseId}/import", course.getId())
+                        .header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"title\":\"Nope\"}"))
+                .andExpect(status().isForbidden());
+        assertEquals(0, lessonRepository.countByCourseId(course.getId()));
+    }
+}
@@ -0,0 +1,179 @@
+package com.jeremy.courses;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+class LessonOrderingIntegrationTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private LessonRepository lessonRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    private String login(String email) throws Exception {
+        String response = mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + email + "\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.token");
+    }
+
+    private List<Integer> orderIndexes(Long courseId) {
+        return lessonRepository.findByCourseIdOrderByOrderIndexAscIdAsc(courseId).stream()
+                .map(Lesson::getOrderIndex)
+                .toList();
+    }
+
+    @Test
+    void concurrentAppendsGetDistinctContiguousPositions() throws Exception {
+        String suffix = UUID.randomUUID().toString();
+        User author = userRepository.save(new User("order-" + suffix + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        Course course = courseRepository.save(new Course("Ordering " + suffix, "Parallel appends", author));
+        String token = login(author.getEmail());
+
+        int lessons = 200;
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < lessons; i++) {
+            String title = "Lesson " + i;
+            futures.add(pool.submit(() -> mockMvc.perform(multipart("/lessons")
+                            .param("title", title)
+                            .param("content", "Content")
+                            .param("courseId", String.valueOf(course.getId()))
+                            .header("Authorization", "Bearer " + token))
+                    .andReturn().getResponse().getStatus()));
+        }
+        for (Future<Integer> future : futures) {
+            assertEquals(200, future.get());
+        }
+        pool.shutdown();
+
+        assertEquals(IntStream.rangeClosed(1, lessons).map(i -> i * LessonOrderingService.GAP).boxed().toList(),
+                orderIndexes(course.getId()));
+    }
+
+    @Test
+    void reorderKeepsUnlistedLessonsAfterListedOnes() throws Exception {
+        String suffix = UUID.randomUUID().toString();
+        User author = userRepository.save(new User("reorder-" + suffix + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        Course course = courseRepository.save(new Course("Reorder " + suffix, "Swap positions", author));
+        String token = login(author.getEmail());
+
+        List<Long> ids = createLessons(course, token, 4);
+
+        // Swap the last two; the first two aren't listed and must follow in their existing order
+        String reordered = mockMvc.perform(post("/lessons/course/{id}/reorder", course.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + ids.get(3) + "," + ids.get(2) + "]")
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertEquals(List.of("Lesson 3", "Lesson 2", "Lesson 0", "Lesson 1"), JsonPath.read(reordered, "$[*].title"));
+        assertEquals(List.of(1024, 2048, 3072, 4096), orderIndexes(course.getId()));
+    }
+
+    private List<Long> createLessons(Course course, String token, int count) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String response = mockMvc.perform(multipart("/lessons")
+                            .param("title", "Lesson " + i)
+                            .param("content", "Content")
+                            .param("courseId", String.valueOf(course.getId()))
+                            .header("Authorization", "Bearer " + token))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            ids.add(((Number) JsonPath.read(response, "$.id")).longValue());
+        }
+        return ids;
+    }
+
+    private void move(Long lessonId, String direction, Long anchorId, String token) throws Exception {
+        mockMvc.perform(post("/lessons/{id}/move", lessonId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"" + direction + "\":" + anchorId + "}")
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk());
+    }
+
+    private List<Long> lessonIds(Long courseId) {
+        return lessonRepository.findByCourseIdOrderByOrderIndexAscIdAsc(courseId).stream().map(Lesson::getId).toList();
+    }
+
+    @Test
+    void moveWritesOnlyTheMovedLessonAndSurvivesExhaustedGaps() throws Exception {
+        String suffix = UUID.randomUUID().toString();
+        User author = userRepository.save(new User("move-" + suffix + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        Course course = courseRepository.save(new Course("Move " + suffix, "Drag and drop", author));
+        String token = login(author.getEmail());
+        List<Long> ids = createLessons(course, token, 4);
+
+        // Last lesson to the front: the others keep their positions. The response carries the rank, not order_index.
+        mockMvc.perform(post("/lessons/{id}/move", ids.get(3))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"before\":" + ids.get(0) + "}")
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.position").value(1))
+                .andExpect(jsonPath("$.orderIndex").doesNotExist());
+        assertEquals(List.of(ids.get(3), ids.get(0), ids.get(1), ids.get(2)), lessonIds(course.getId()));
+        assertEquals(List.of(512, 1024, 2048, 3072), orderIndexes(course.getId()));
+
+        // Keep squeezing lessons into the same slot, well past the point where the gap runs out
+        List<Long> expected = new ArrayList<>(lessonIds(course.getId()));
+        for (int i = 0; i < 30; i++) {
+            Long moved = expected.get(expected.size() - 1);
+            move(moved, "after", expected.get(0), token);
+            expected.remove(expected.size() - 1);
+            expected.add(1, moved);
+            assertEquals(expected, lessonIds(course.getId()));
+        }
+
+        mockMvc.perform(post("/lessons/{id}/move", ids.get(0))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"before\":" + ids.get(0) + "}")
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,129 @@
+package com.jeremy.courses;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Login latency/throughput under a burst of concurrent logins, plus the latency
+ * of a cheap public endpoint measured at the same time (it must not starve).
+ *
+ * Run with: ./mvnw test -Pbenchmark -Dtest=LoginBenchmarkTests
+ * Tune with -Dbenchmark.login.requests=... -Dbenchmark.login.threads=...
+ */
+@Tag("benchmark")
+@SpringBootTest
+class LoginBenchmarkTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    @Test
+    void loginBurst() throws Exception {
+        int requests = Integer.getInteger("benchmark.login.requests", 400);
+        int threads = Integer.getInteger("benchmark.login.threads", 64);
+
+        String email = "bench-" + UUID.randomUUID() + "@example.com";
+        userRepository.save(new User(email, passwordEncoder.encode("secret"), "STUDENT"));
+        String body = "{\"email\":\"" + email + "\",\"password\":\"secret\"}";
+
+        List<Long> loginLatencies = Collections.synchronizedList(new ArrayList<>());
+        List<Long> catalogLatencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger ok = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger other = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            futures.add(pool.submit(() -> {
+                long t0 = System.nanoTime();
+                int status = mockMvc.perform(post("/auth/login")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(body))
+                        .andReturn().getResponse().getStatus();
+                loginLatencies.add(System.nanoTime() - t0);
+                if (status == 200) ok.incrementAndGet();
+                else if (status == 503) rejected.incrementAndGet();
+                else other.incrementAndGet();
+                return null;
+            }));
+        }
+        // Probe a non-auth endpoint while the burst runs
+        Future<?> probe = pool.submit(() -> {
+            while (futures.stream().anyMatch(f -> !f.isDone())) {
+                long t0 = System.nanoTime();
+                mockMvc.perform(get("/"));
+                catalogLatencies.add(System.nanoTime() - t0);
+                Thread.sleep(5);
+            }
+            return null;
+        });
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        probe.get();
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+
+        System.out.printf("Login benchmark: %d requests, %d threads, %.1f req/s%n",
+                requests, threads, requests / (elapsed / 1e9));
+        System.out.printf("  200=%d 503=%d other=%d%n", ok.get(), rejected.get(), other.get());
+        System.out.println("  login latency    " + percentiles(loginLatencies));
+        System.out.println("  GET / latency    " + percentiles(catalogLatencies));
+
+        assertEquals(0, other.get());
+    }
+
+    private static String percentiles(List<Long> nanos) {
+        List<Long> sorted = new ArrayList<>(nanos);
+        if (sorted.isEmpty()) {
+            return "n/a";
+        }
+        Collections.sort(sorted);
+        return String.format("p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                at(sorted, 0.50), at(sorted, 0.95), at(sorted, 0.99), sorted.get(sorted.size() - 1) / 1e6);
+    }
+
+    private static double at(List<Long> sorted, double p) {
+        int index = (int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1);
+        return sorted.get(Math.max(0, index)) / 1e6;
+    }
+}
@@ -0,0 +1,69 @@
+package com.jeremy.courses;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+class LoginRehashIntegrationTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    @Test
+    void loginWithOldHashSucceedsAndUpgradesItInTheBackground() throws Exception {
+        String oldHash = new BCryptPasswordEncoder(4).encode("secret");
+        User user = userRepository.save(new User("rehash-" + UUID.randomUUID() + "@example.com", oldHash, "STUDENT"));
+
+        mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + user.getEmail() + "\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.token").isNotEmpty());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        String hash = oldHash;
+        while (hash.equals(oldHash) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            hash = userRepository.findById(user.getId()).orElseThrow().getPassword();
+        }
+        assertTrue(hash.startsWith("$2a$10$"), hash);
+        assertTrue(new BCryptPasswordEncoder().matches("secret", hash));
+    }
+
+    @Test
+    void upgradeDoesNotOverwriteAPasswordChangedInTheMeantime() {
+        String oldHash = new BCryptPasswordEncoder(4).encode("secret");
+        User user = userRepository.save(new User("rehash-" + UUID.randomUUID() + "@example.com", oldHash, "STUDENT"));
+        user.setPassword("reset-hash");
+        userRepository.save(user);
+
+        assertEquals(0, userRepository.upgradePassword(user.getId(), oldHash, "upgraded-hash"));
+        assertEquals("reset-hash", userRepository.findById(user.getId()).orElseThrow().getPassword());
+    }
+}
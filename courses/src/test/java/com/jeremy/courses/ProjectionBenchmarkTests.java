@@ -0,0 +1,114 @@
+package com.jeremy.courses;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Response size and load+serialize time of list endpoints: JPA entities (what the endpoints used
+ * to return) versus the read projections they return now.
+ *
+ * Run with: ./mvnw test -Pbenchmark -Dtest=ProjectionBenchmarkTests
+ * Tune with -Dbenchmark.projection.lessons=... -Dbenchmark.projection.iterations=...
+ */
+@Tag("benchmark")
+@SpringBootTest
+class ProjectionBenchmarkTests {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private LessonRepository lessonRepository;
+
+    @Autowired
+    private JsonMapper jsonMapper;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void entitiesVersusProjections() {
+        int lessons = Integer.getInteger("benchmark.projection.lessons", 200);
+        int iterations = Integer.getInteger("benchmark.projection.iterations", 200);
+
+        User author = userRepository.findByEmail("admin@example.com");
+        Course course = courseRepository.save(new Course("Projection benchmark " + UUID.randomUUID(),
+                "A course description that is repeated for every lesson when entities are serialized. ".repeat(5), author));
+        List<Lesson> created = new ArrayList<>();
+        for (int i = 1; i <= lessons; i++) {
+            Lesson lesson = new Lesson("Lesson " + i, "Lesson body ".repeat(40), "https://youtu.be/x" + i, null, course);
+            lesson.setOrderIndex(i);
+            created.add(lesson);
+        }
+        lessonRepository.saveAll(created);
+
+        try {
+            Long courseId = course.getId();
+            System.out.printf("Projection benchmark: %d lessons, %d iterations%n", lessons, iterations);
+            compare("lessons by course",
+                    () -> lessonRepository.findByCourseIdOrderByOrderIndexAscIdAsc(courseId),
+                    () -> lessonRepository.findDetailsByCourseId(courseId),
+                    iterations);
+            compare("lesson outlines  ",
+                    () -> lessonRepository.findByCourseIdOrderByOrderIndexAscIdAsc(courseId),
+                    () -> lessonRepository.findOutlinesByCourseId(courseId),
+                    iterations);
+            // Here the "entities" side is the full-content detail list the sidebar used to get
+            compare("lesson summaries ",
+                    () -> lessonRepository.findDetailsByCourseId(courseId),
+                    () -> lessonRepository.findSummariesByCourseId(courseId),
+                    iterations);
+            compare("catalog page     ",
+                    // Same anonymous keyset page on both sides (no count query), entities versus CourseSummary
+                    () -> entityManager.createQuery("select c from Course c left join c.author a "
+                                    + "where c.id > :after and c.restrictedToAllowList = false order by c.id", Course.class)
+                            .setParameter("after", 0L)
+                            .setMaxResults(CourseController.DEFAULT_PAGE_SIZE)
+                            .getResultList(),
+                    () -> courseRepository.findVisiblePage(0L, null, null, false, Limit.of(CourseController.DEFAULT_PAGE_SIZE)),
+                    iterations);
+        } finally {
+            lessonRepository.deleteBatchByCourseId(course.getId(), lessons);
+            courseRepository.delete(course);
+        }
+    }
+
+    private void compare(String label, Supplier<List<?>> entities, Supplier<List<?>> projections, int iterations) {
+        Result before = measure(entities, iterations);
+        Result after = measure(projections, iterations);
+        System.out.printf("  %s entities: %,d bytes %.2fms/op | projections: %,d bytes %.2fms/op%n",
+                label, before.bytes(), before.millisPerOp(), after.bytes(), after.millisPerOp());
+        assertTrue(after.bytes() <= before.bytes());
+    }
+
+    private record Result(int bytes, double millisPerOp) {
+    }
+
+    private Result measure(Supplier<List<?>> load, int iterations) {
+        int bytes = 0;
+        // Warm up, then time load + serialize together since both change
+        for (int i = 0; i < Math.min(20, iterations); i++) {
+            bytes = jsonMapper.writeValueAsBytes(load.get()).length;
+        }
+        long t0 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            bytes = jsonMapper.writeValueAsBytes(load.get()).length;
+        }
+        return new Result(bytes, (System.nanoTime() - t0) / 1e6 / iterations);
+    }
+}
@@ -0,0 +1,271 @@
+package com.jeremy.courses;
+
+import com.jayway.jsonpath.JsonPath;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Locks in how many SQL statements common authenticated requests cost,
+ * so per-request user lookups don't creep back in.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class RequestQueryCountTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private LessonRepository lessonRepository;
+
+    @Autowired
+    private CourseEnrollmentRepository enrollmentRepository;
+
+    @Autowired
+    private LessonProgressRepository progressRepository;
+
+    @Autowired
+    private LessonContentStore lessonContentStore;
+
+    @Autowired
+    private ProgressCounters progressCounters;
+
+    private MockMvc mockMvc;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    private String loginAsNewStudent() throws Exception {
+        String email = "query-count-" + UUID.randomUUID() + "@example.com";
+        userRepository.save(new User(email, passwordEncoder.encode("secret"), "STUDENT"));
+        return loginAs(email, "secret");
+    }
+
+    private String loginAs(String email, String password) throws Exception {
+        String response = mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + email + "\",\"password\":\"" + password + "\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.token");
+    }
+
+    private long statementsFor(RequestBuilder request, int expectedStatus) throws Exception {
+        statistics.clear();
+        mockMvc.perform(request).andExpect(status().is(expectedStatus));
+        return statistics.getPrepareStatementCount();
+    }
+
+    @Test
+    void myCoursesDoesNotReloadTheCaller() throws Exception {
+        String token = loginAsNewStudent();
+        // First request resolves the token; later ones are served from the token cache
+        mockMvc.perform(get("/enrollments/my-courses").header("Authorization", "Bearer " + token));
+
+        long statements = statementsFor(get("/enrollments/my-courses").header("Authorization", "Bearer " + token), 200);
+
+        // Only the enrollments query itself, no users lookup
+        assertEquals(1, statements);
+    }
+
+    @Test
+    void myCoursesQueryCountDoesNotGrowWithEnrollments() throws Exception {
+        String email = "dashboard-" + UUID.randomUUID() + "@example.com";
+        User student = userRepository.save(new User(email, passwordEncoder.encode("secret"), "STUDENT"));
+        User author = userRepository.save(new User("dashboard-author-" + UUID.randomUUID() + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        String token = loginAs(email, "secret");
+
+        long[] statements = new long[2];
+        for (int round = 0; round < 2; round++) {
+            // Two more enrolled courses per round, each with three lessons of which the student finished one
+            for (int i = 0; i < 2; i++) {
+                Course course = courseRepository.save(new Course("Dashboard " + round + "-" + i, "Progress", author));
+                enrollmentRepository.save(new CourseEnrollment(student, course));
+                for (int l = 0; l < 3; l++) {
+                    Lesson lesson = lessonContentStore.create(new Lesson("Lesson " + l, "Body", null, null, course));
+                    if (l == 0) {
+                        progressCounters.complete(student.getId(), lesson.getId(), course.getId());
+                    }
+                }
+            }
+            mockMvc.perform(get("/enrollments/my-courses").header("Authorization", "Bearer " + token));
+            statements[round] = statementsFor(get("/enrollments/my-courses").header("Authorization", "Bearer " + token), 200);
+        }
+
+        assertEquals(1, statements[0]);
+        assertEquals(statements[0], statements[1]);
+        mockMvc.perform(get("/enrollments/my-courses").header("Authorization", "Bearer " + token))
+                .andExpect(jsonPath("$.length()").value(4))
+                .andExpect(jsonPath("$[3].totalLessons").value(3))
+                .andExpect(jsonPath("$[3].completedLessons").value(1));
+        mockMvc.perform(get("/enrollments/my-courses").param("limit", "3").header("Authorization", "Bearer " + token))
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(header().exists("X-Next-Cursor"));
+    }
+
+    @Test
+    void myCoursesPagesFollowEnrollmentDateEvenWhenIdsDoNot() throws Exception {
+        String email = "dashboard-order-" + UUID.randomUUID() + "@example.com";
+        User student = userRepository.save(new User(email, passwordEncoder.encode("secret"), "STUDENT"));
+        User author = userRepository.save(new User("dashboard-order-author-" + UUID.randomUUID() + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        String token = loginAs(email, "secret");
+
+        // Ids handed out by another instance's pooled block can be lower than older enrollments' ids
+        List<String> titles = List.of("Enrolled third", "Enrolled first", "Enrolled second");
+        LocalDateTime base = LocalDateTime.now().minusDays(1).withNano(0);
+        int[] hourOffsets = {3, 1, 2};
+        for (int i = 0; i < titles.size(); i++) {
+            Course course = courseRepository.save(new Course(titles.get(i), "Order", author));
+            CourseEnrollment enrollment = new CourseEnrollment(student, course);
+            enrollment.setEnrolledAt(base.plusHours(hourOffsets[i]));
+            enrollmentRepository.save(enrollment);
+        }
+        mockMvc.perform(get("/enrollments/my-courses").header("Authorization", "Bearer " + token));
+
+        MvcResult first = mockMvc.perform(get("/enrollments/my-courses").param("limit", "2").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].course.title").value("Enrolled first"))
+                .andExpect(jsonPath("$[1].course.title").value("Enrolled second"))
+                .andReturn();
+        String cursor = first.getResponse().getHeader("X-Next-Cursor");
+        long statements = statementsFor(get("/enrollments/my-courses").param("after", cursor).param("limit", "2")
+                .header("Authorization", "Bearer " + token), 200);
+        assertEquals(1, statements);
+        mockMvc.perform(get("/enrollments/my-courses").param("after", cursor).param("limit", "2")
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].course.title").value("Enrolled third"))
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+        mockMvc.perform(get("/enrollments/my-courses").param("after", "42").header("Authorization", "Bearer " + token))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void courseProgressIsOneQueryForTheLessonsInCourseOrder() throws Exception {
+        String email = "progress-" + UUID.randomUUID() + "@example.com";
+        User student = userRepository.save(new User(email, passwordEncoder.encode("secret"), "STUDENT"));
+        User author = userRepository.save(new User("progress-author-" + UUID.randomUUID() + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        Course course = courseRepository.save(new Course("Progress", "Ordered lessons", author));
+        enrollmentRepository.save(new CourseEnrollment(student, course));
+        int lessons = 30;
+        for (int i = 0; i < lessons; i++) {
+            // Saved in reverse of their course order
+            Lesson lesson = new Lesson("Lesson " + (lessons - i), "Body", null, null, course);
+            lesson.setOrderIndex((lessons - i) * LessonOrderingService.GAP);
+            lesson = lessonRepository.save(lesson);
+            if (i % 3 == 0) {
+                LessonProgress progress = new LessonProgress(student, lesson);
+                progress.setCompleted(true);
+                progressRepository.save(progress);
+            }
+        }
+        String token = loginAs(email, "secret");
+        mockMvc.perform(get("/enrollments/courses/{id}/progress", course.getId()).header("Authorization", "Bearer " + token));
+
+        // Course and enrollment checks, then one statement for every lesson's progress
+        assertEquals(3, statementsFor(get("/enrollments/courses/{id}/progress", course.getId())
+                .header("Authorization", "Bearer " + token), 200));
+        mockMvc.perform(get("/enrollments/courses/{id}/progress", course.getId()).header("Authorization", "Bearer " + token))
+                .andExpect(jsonPath("$.totalLessons").value(lessons))
+                .andExpect(jsonPath("$.completedLessons").value(10))
+                .andExpect(jsonPath("$.lessons[0].lesson.title").value("Lesson 1"))
+                .andExpect(jsonPath("$.lessons[0].lesson.position").value(1))
+                .andExpect(jsonPath("$.lessons[0].completed").value(false))
+                .andExpect(jsonPath("$.lessons[29].lesson.title").value("Lesson 30"))
+                .andExpect(jsonPath("$.lessons[29].completed").value(true))
+                .andExpect(jsonPath("$.lessons[29].completedAt").isNotEmpty());
+    }
+
+    @Test
+    void completingALessonIsOneQueryBeforeTheAcknowledgement() throws Exception {
+        String email = "complete-" + UUID.randomUUID() + "@example.com";
+        User student = userRepository.save(new User(email, passwordEncoder.encode("secret"), "STUDENT"));
+        User author = userRepository.save(new User("complete-author-" + UUID.randomUUID() + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        Course course = courseRepository.save(new Course("Completion", "Cheap acknowledgement", author));
+        enrollmentRepository.save(new CourseEnrollment(student, course));
+        Lesson lesson = lessonContentStore.create(new Lesson("Lesson", "Notes ".repeat(10_000), null, null, course));
+        String token = loginAs(email, "secret");
+        mockMvc.perform(get("/users/me").header("Authorization", "Bearer " + token));
+
+        // The lesson/enrollment check only; the progress write happens in the background
+        assertEquals(1, statementsFor(post("/enrollments/lessons/{id}/complete", lesson.getId())
+                .header("Authorization", "Bearer " + token), 202));
+        assertEquals(0, statistics.getEntityStatistics(Lesson.class.getName()).getLoadCount());
+    }
+
+    @Test
+    void lessonListingIsASingleQuery() throws Exception {
+        String token = loginAsNewStudent();
+        mockMvc.perform(get("/lessons").header("Authorization", "Bearer " + token));
+
+        assertEquals(1, statementsFor(get("/lessons").param("limit", "10").header("Authorization", "Bearer " + token), 200));
+    }
+
+    @Test
+    void revalidatedLessonIsNotLoaded() throws Exception {
+        User author = userRepository.save(new User("etag-" + UUID.randomUUID() + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        Course course = courseRepository.save(new Course("Conditional", "Revalidation", author));
+        Lesson lesson = lessonRepository.save(new Lesson("Big lesson", "Notes ".repeat(10_000), null, null, course));
+        String token = loginAs(author.getEmail(), "secret");
+        String etag = mockMvc.perform(get("/lessons/{id}", lesson.getId()).header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        statistics.clear();
+        mockMvc.perform(get("/lessons/{id}", lesson.getId())
+                        .header("Authorization", "Bearer " + token)
+                        .header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        // Only the course is read for the access check; the lesson body never is
+        assertEquals(0, statistics.getEntityStatistics(Lesson.class.getName()).getLoadCount());
+    }
+
+    @Test
+    void adminOnlyEndpointRejectsStudentWithoutQuerying() throws Exception {
+        String token = loginAsNewStudent();
+        mockMvc.perform(get("/users/me").header("Authorization", "Bearer " + token));
+
+        assertEquals(0, statementsFor(get("/users").header("Authorization", "Bearer " + token), 403));
+    }
+}
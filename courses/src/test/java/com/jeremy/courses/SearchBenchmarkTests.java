@@ -0,0 +1,113 @@
+package com.jeremy.courses;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Search latency over a synthetic corpus (default 1M lessons of ~60 words drawn from a
+ * 5,000-word vocabulary, generated in SQL). The corpus is removed afterwards.
+ *
+ * Run with: ./mvnw test -Pbenchmark -Dtest=SearchBenchmarkTests
+ * Tune with -Dbenchmark.search.lessons=... -Dbenchmark.search.iterations=...
+ */
+@Tag("benchmark")
+@SpringBootTest
+class SearchBenchmarkTests {
+
+    private static final int VOCABULARY = 5000;
+    private static final int WORDS_PER_LESSON = 60;
+    private static final int CHUNK = 100_000;
+
+    @Autowired
+    private SearchService searchService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private LessonRepository lessonRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void searchOverLargeCorpus() {
+        int lessons = Integer.getInteger("benchmark.search.lessons", 1_000_000);
+        int iterations = Integer.getInteger("benchmark.search.iterations", 50);
+
+        User author = userRepository.findByEmail("admin@example.com");
+        Course course = courseRepository.save(new Course("Search benchmark " + UUID.randomUUID(), "Synthetic corpus", author));
+        try {
+            long t0 = System.nanoTime();
+            // Vocabulary words look like "kabuvo123": letters keep the parser treating them as words
+            String vocabulary = "(SELECT array_agg('kabuvo' || i) AS words FROM generate_series(1, " + VOCABULARY + ") i)";
+            for (int start = 1; start <= lessons; start += CHUNK) {
+                int end = Math.min(lessons, start + CHUNK - 1);
+                jdbcTemplate.update("INSERT INTO lessons (title, content, course_id, order_index) "
+                        + "SELECT 'Lesson ' || g || ' ' || v.words[1 + (g % " + VOCABULARY + ")], "
+                        // "w * 0" ties the aggregate to the inner query, "g > 0" makes it re-run per lesson
+                        + "(SELECT string_agg(v.words[1 + w * 0 + floor(power(random(), 2) * " + VOCABULARY + ")::int], ' ') "
+                        + " FROM generate_series(1, " + WORDS_PER_LESSON + ") w WHERE g > 0), "
+                        + "?, g FROM generate_series(?, ?) g, " + vocabulary + " v",
+                        course.getId(), start, end);
+            }
+            jdbcTemplate.execute("ANALYZE lessons");
+            System.out.printf("Search benchmark: generated %d lessons in %.1fs%n", lessons, (System.nanoTime() - t0) / 1e9);
+
+            AuthenticatedUser admin = AuthenticatedUser.of(author);
+            // Word frequency is skewed (power distribution), so low numbers are common and high ones rare
+            measure("common term      ", "kabuvo3", admin, iterations);
+            measure("rare term        ", "kabuvo4900", admin, iterations);
+            measure("two terms (AND)  ", "kabuvo40 kabuvo2500", admin, iterations);
+            measure("phrase           ", "\"kabuvo10 kabuvo11\"", admin, iterations);
+            measure("anonymous, rare  ", "kabuvo4900", null, iterations);
+            measure("rare, page 10    ", "kabuvo4900", admin, iterations, 200);
+        } finally {
+            while (lessonRepository.deleteBatchByCourseId(course.getId(), 50_000) > 0) {
+                // chunked cleanup
+            }
+            courseRepository.delete(course);
+        }
+    }
+
+    private void measure(String label, String query, AuthenticatedUser user, int iterations) {
+        measure(label, query, user, iterations, 0);
+    }
+
+    private void measure(String label, String query, AuthenticatedUser user, int iterations, int offset) {
+        List<Long> latencies = new ArrayList<>();
+        int results = 0;
+        for (int i = 0; i < iterations; i++) {
+            long t0 = System.nanoTime();
+            results = searchService.search(query, user, offset, 21).size();
+            latencies.add(System.nanoTime() - t0);
+        }
+        System.out.println("  " + label + " results=" + results + " " + percentiles(latencies));
+        assertFalse(latencies.isEmpty());
+    }
+
+    private static String percentiles(List<Long> nanos) {
+        List<Long> sorted = new ArrayList<>(nanos);
+        Collections.sort(sorted);
+        return String.format("p50=%.1fms p95=%.1fms max=%.1fms",
+                at(sorted, 0.50), at(sorted, 0.95), sorted.get(sorted.size() - 1) / 1e6);
+    }
+
+    private static double at(List<Long> sorted, double p) {
+        int index = (int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1);
+        return sorted.get(Math.max(0, index)) / 1e6;
+    }
+}
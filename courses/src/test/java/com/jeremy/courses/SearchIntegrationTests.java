@@ -0,0 +1,136 @@
+package com.jeremy.courses;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+class SearchIntegrationTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private LessonRepository lessonRepository;
+
+    @Autowired
+    private CourseEnrollmentRepository enrollmentRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    private String login(User user) throws Exception {
+        String response = mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + user.getEmail() + "\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.token");
+    }
+
+    private List<Map<String, Object>> search(String q, String token) throws Exception {
+        var request = get("/search").param("q", q);
+        if (token != null) request.header("Authorization", "Bearer " + token);
+        String body = mockMvc.perform(request).andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        return JsonPath.read(body, "$.results");
+    }
+
+    // Random letters-only token so stemming leaves it alone and no other data matches
+    private static String uniqueWord() {
+        return "zq" + UUID.randomUUID().toString().replaceAll("[^a-f]", "");
+    }
+
+    @Test
+    void searchRanksHighlightsAndRespectsVisibility() throws Exception {
+        String word = uniqueWord();
+        String suffix = UUID.randomUUID().toString();
+        User author = userRepository.save(new User("search-author-" + suffix + "@example.com", passwordEncoder.encode("secret"), "CREATOR"));
+        User student = userRepository.save(new User("search-student-" + suffix + "@example.com", passwordEncoder.encode("secret"), "STUDENT"));
+
+        Course open = courseRepository.save(new Course("Intro to " + word, "Everything about the topic", author));
+        Lesson lesson = lessonRepository.save(new Lesson("Basics", "Deep dive into " + word + " internals", null, null, open));
+
+        Course restricted = new Course("Secret " + word, "Hidden course", author);
+        restricted.setRestrictedToAllowList(true);
+        restricted.setAllowedEmails(Set.of("someone-else@example.com"));
+        restricted = courseRepository.save(restricted);
+
+        List<Map<String, Object>> anonymous = search(word, null);
+        assertEquals(2, anonymous.size());
+        // Title match outranks the content match
+        assertEquals("course", anonymous.get(0).get("type"));
+        assertEquals(open.getId().intValue(), ((Number) anonymous.get(0).get("id")).intValue());
+        assertTrue(((String) anonymous.get(0).get("title")).contains(word));
+
+        Map<String, Object> lessonHit = anonymous.get(1);
+        assertEquals("lesson", lessonHit.get("type"));
+        assertEquals(false, lessonHit.get("fullAccess"));
+        assertFalse(((String) lessonHit.get("snippet")).contains("internals"), "content must not leak");
+        Long restrictedId = restricted.getId();
+        assertTrue(anonymous.stream().noneMatch(hit -> ((Number) hit.get("id")).longValue() == restrictedId
+                && "course".equals(hit.get("type"))));
+
+        enrollmentRepository.save(new CourseEnrollment(student, open));
+        List<Map<String, Object>> enrolled = search(word, login(student));
+        Map<String, Object> enrolledLessonHit = enrolled.stream()
+                .filter(hit -> "lesson".equals(hit.get("type"))).findFirst().orElseThrow();
+        assertEquals(lesson.getId().intValue(), ((Number) enrolledLessonHit.get("id")).intValue());
+        assertEquals(true, enrolledLessonHit.get("fullAccess"));
+        assertTrue(((String) enrolledLessonHit.get("snippet")).contains("<mark>" + word + "</mark>"));
+
+        // The author sees the restricted course too
+        assertEquals(3, search(word, login(author)).size());
+    }
+
+    @Test
+    void searchPaginatesAndRejectsEmptyQueries() throws Exception {
+        String word = uniqueWord();
+        User author = userRepository.save(new User("search-pages-" + UUID.randomUUID() + "@example.com", "hash", "CREATOR"));
+        for (int i = 0; i < 5; i++) {
+            courseRepository.save(new Course("Course " + i + " " + word, "About " + word, author));
+        }
+
+        String first = mockMvc.perform(get("/search").param("q", word).param("size", "3"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        assertEquals(3, ((List<?>) JsonPath.read(first, "$.results")).size());
+        assertEquals(true, JsonPath.read(first, "$.hasMore"));
+
+        String second = mockMvc.perform(get("/search").param("q", word).param("size", "3").param("page", "1"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        assertEquals(2, ((List<?>) JsonPath.read(second, "$.results")).size());
+        assertEquals(false, JsonPath.read(second, "$.hasMore"));
+
+        mockMvc.perform(get("/search").param("q", " ")).andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,46 @@
+package com.jeremy.courses;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignedTokenCodecTests {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+    private SignedTokenCodec.Claims claims(long expiresAt) {
+        return new SignedTokenCodec.Claims("jti-1", 42L, "CREATOR", 1_000L, expiresAt, "odd|email@example.com");
+    }
+
+    @Test
+    void roundTripsClaimsUntilExpiry() {
+        SignedTokenCodec codec = new SignedTokenCodec(SECRET);
+        String token = codec.encode(claims(5_000L));
+
+        SignedTokenCodec.Claims decoded = codec.decode(token, 2_000L);
+        assertNotNull(decoded);
+        assertEquals(42L, decoded.userId());
+        assertEquals("CREATOR", decoded.role());
+        assertEquals("odd|email@example.com", decoded.email());
+
+        assertNull(codec.decode(token, 5_000L));
+    }
+
+    @Test
+    void rejectsTamperedOrForeignTokens() {
+        SignedTokenCodec codec = new SignedTokenCodec(SECRET);
+        String token = codec.encode(claims(5_000L));
+
+        String otherSecretToken = new SignedTokenCodec(SECRET.replace('0', 'x')).encode(claims(5_000L));
+        assertNull(codec.decode(otherSecretToken, 2_000L));
+
+        String tampered = "A" + token.substring(1);
+        assertNull(codec.decode(tampered, 2_000L));
+        assertNull(codec.decode("not-a-token", 2_000L));
+    }
+
+    @Test
+    void requiresReasonablyLongSecret() {
+        assertThrows(IllegalStateException.class, () -> new SignedTokenCodec("short"));
+    }
+}